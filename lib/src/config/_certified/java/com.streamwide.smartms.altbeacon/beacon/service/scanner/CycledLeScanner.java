@@ -31,22 +31,28 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Message;
 import android.os.SystemClock;
 
 import androidx.annotation.AnyThread;
-import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 import com.streamwide.smartms.altbeacon.beacon.startup.StartupBroadcastReceiver;
 import com.streamwide.smartms.altbeacon.bluetooth.BluetoothCrashResolver;
 
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class CycledLeScanner {
     public static final long ANDROID_N_MAX_SCAN_DURATION_MILLIS = 30 * 60 * 1000L; // 30 minutes
     private static final String TAG = "CycledLeScanner";
+    // Longest time stop() and destroy() wait for the scan cycle thread
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
     private BluetoothAdapter mBluetoothAdapter;
 
     private long mLastScanCycleStartTime = 0L;
@@ -74,16 +80,30 @@ public abstract class CycledLeScanner {
     protected long mBetweenScanPeriod;
 
     /**
-     * Main thread handle for scheduling scan cycle tasks.
+     * Scan cycle thread handle for scheduling scan cycle tasks.  The scan cycle runs on
+     * {@link #mScanThread}, or on the main thread if
+     * {@link BeaconManager#isMainThreadScanCyclingEnabled()}.
      * <p>
      * Use this to schedule deferred tasks such as the following:
      * <ul>
      *     <li>{@link #scheduleScanCycleStop()}</li>
      *     <li>{@link #scanLeDevice(Boolean) scanLeDevice(true)} from {@link #deferScanIfNeeded()}</li>
      * </ul>
+     * All of its tasks are removed when scanning stops.
      */
     @NonNull
-    protected final Handler mHandler = new Handler(Looper.getMainLooper());
+    protected final Handler mHandler;
+
+    /**
+     * Scan cycle thread handle for handing over scan results and calls made on other threads.
+     * Unlike {@link #mHandler}, its tasks are never removed when scanning stops.
+     */
+    @NonNull
+    protected final Handler mScanCallbackHandler;
+
+    // Time spent on the main thread since the current scan cycle started
+    private final AtomicLong mMainThreadNanos = new AtomicLong();
+    private volatile long mLastCycleMainThreadNanos = 0;
 
     /**
      * Handler to background thread for interacting with the low-level Android BLE scanner.
@@ -134,6 +154,11 @@ public abstract class CycledLeScanner {
         mScanThread = new HandlerThread("CycledLeScannerThread");
         mScanThread.start();
         mScanHandler = new Handler(mScanThread.getLooper());
+
+        Looper scanCycleLooper = BeaconManager.isMainThreadScanCyclingEnabled()
+                ? Looper.getMainLooper() : mScanThread.getLooper();
+        mHandler = new TimedHandler(scanCycleLooper);
+        mScanCallbackHandler = new TimedHandler(scanCycleLooper);
     }
 
     @NonNull
@@ -157,8 +182,17 @@ public abstract class CycledLeScanner {
      * between LOW_POWER_MODE vs. LOW_LATENCY_MODE
      * @param backgroundFlag background mode flag
      */
-    @MainThread
-    public void setScanPeriods(long scanPeriod, long betweenScanPeriod, boolean backgroundFlag) {
+    @AnyThread
+    public void setScanPeriods(final long scanPeriod, final long betweenScanPeriod, final boolean backgroundFlag) {
+        runOnScanCycleThread(new Runnable() {
+            @Override
+            public void run() {
+                applyScanPeriods(scanPeriod, betweenScanPeriod, backgroundFlag);
+            }
+        });
+    }
+
+    private void applyScanPeriods(long scanPeriod, long betweenScanPeriod, boolean backgroundFlag) {
         LogManager.d(TAG, "Set scan periods called with %s, %s Background mode must have changed.",
                 scanPeriod, betweenScanPeriod);
         if (mBackgroundFlag != backgroundFlag) {
@@ -198,8 +232,17 @@ public abstract class CycledLeScanner {
         }
     }
 
-    @MainThread
+    @AnyThread
     public void start() {
+        runOnScanCycleThread(new Runnable() {
+            @Override
+            public void run() {
+                startScanCycles();
+            }
+        });
+    }
+
+    private void startScanCycles() {
         LogManager.d(TAG, "start called");
         mScanningEnabled = true;
         if (!mScanCyclerStarted) {
@@ -209,8 +252,21 @@ public abstract class CycledLeScanner {
         }
     }
 
-    @MainThread
+    /**
+     * Stops scan cycles.  Waits for them to be stopped when called on another thread than the
+     * scan cycle thread, so that the end of the last cycle is reported before it returns.
+     */
+    @AnyThread
     public void stop() {
+        runOnScanCycleThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                stopScanCycles();
+            }
+        });
+    }
+
+    private void stopScanCycles() {
         LogManager.d(TAG, "stop called");
         mScanningEnabled = false;
         if (mScanCyclerStarted) {
@@ -241,8 +297,21 @@ public abstract class CycledLeScanner {
         mDistinctPacketsDetectedPerScan = detected;
     }
 
-    @MainThread
+    /**
+     * Releases the scanner.  Like {@link #stop()}, waits for the scan cycle thread when called on
+     * another thread.
+     */
+    @AnyThread
     public void destroy() {
+        runOnScanCycleThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                destroyOnScanCycleThread();
+            }
+        });
+    }
+
+    private void destroyOnScanCycleThread() {
         LogManager.d(TAG, "Destroying");
 
         // Remove any postDelayed Runnables queued for the next scan cycle
@@ -262,13 +331,86 @@ public abstract class CycledLeScanner {
         cleanupCancelAlarmOnUserSwitch();
     }
 
+    /**
+     * @return the time, in nanoseconds, this scanner spent on the main thread during the last
+     * completed scan cycle
+     */
+    @AnyThread
+    public long getLastCycleMainThreadNanos() {
+        return mLastCycleMainThreadNanos;
+    }
+
+    /**
+     * Runs a task on the scan cycle thread: immediately if called on it, otherwise once the tasks
+     * already queued on it are done.
+     */
+    @AnyThread
+    protected void runOnScanCycleThread(@NonNull Runnable task) {
+        long startNanos = System.nanoTime();
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            task.run();
+        } else {
+            mScanCallbackHandler.post(task);
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mMainThreadNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Runs a task on the scan cycle thread like {@link #runOnScanCycleThread(Runnable)}, but
+     * waits for it to be done when called on another thread, for at most
+     * {@link #STOP_TIMEOUT_MILLIS}.
+     */
+    @AnyThread
+    private void runOnScanCycleThreadAndWait(@NonNull final Runnable task) {
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            runOnScanCycleThread(task);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean posted = mScanCallbackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        // Not posted once the scan cycle thread quit, there is nothing left to wait for then
+        if (posted) {
+            try {
+                if (!done.await(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LogManager.w(TAG, "Timed out waiting for the scan cycle thread");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mMainThreadNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reports the end of a scan cycle to the callback
+     */
+    protected void notifyCycleEnd() {
+        mLastCycleMainThreadNanos = mMainThreadNanos.getAndSet(0);
+        LogManager.d(TAG, "Spent %s microseconds on the main thread during the scan cycle",
+                mLastCycleMainThreadNanos / 1000);
+        mCycledLeScanCallback.onCycleEnd();
+    }
+
     protected abstract void stopScan();
 
     protected abstract boolean deferScanIfNeeded();
 
     protected abstract void startScan();
 
-    @MainThread
     protected void scanLeDevice(final @NonNull Boolean enable) {
         try {
             mScanCyclerStarted = true;
@@ -339,7 +481,6 @@ public abstract class CycledLeScanner {
         }
     }
 
-    @MainThread
     protected void scheduleScanCycleStop() {
         // Stops scanning after a pre-defined scan period.
         long millisecondsUntilStop = mScanCycleStopTime - SystemClock.elapsedRealtime();
@@ -350,7 +491,6 @@ public abstract class CycledLeScanner {
                 setWakeUpAlarm();
             }
             mHandler.postDelayed(new Runnable() {
-                @MainThread
                 @Override
                 public void run() {
                     scheduleScanCycleStop();
@@ -363,11 +503,10 @@ public abstract class CycledLeScanner {
 
     protected abstract void finishScan();
 
-    @MainThread
     private void finishScanCycle() {
         LogManager.d(TAG, "Done with scan cycle");
         try {
-            mCycledLeScanCallback.onCycleEnd();
+            notifyCycleEnd();
             if (mScanning) {
                 if (getBluetoothAdapter().isEnabled()) {
                     // Determine if we need to restart scanning.  Restarting scanning is only
@@ -579,4 +718,30 @@ public abstract class CycledLeScanner {
         }
         return false;
     }
+
+    /**
+     * Handler adding the time taken by its tasks on the main thread to the current scan cycle
+     */
+    private class TimedHandler extends Handler {
+        private final boolean mMainThread;
+
+        TimedHandler(@NonNull Looper looper) {
+            super(looper);
+            mMainThread = looper == Looper.getMainLooper();
+        }
+
+        @Override
+        public void dispatchMessage(@NonNull Message msg) {
+            if (!mMainThread) {
+                super.dispatchMessage(msg);
+                return;
+            }
+            long startNanos = System.nanoTime();
+            try {
+                super.dispatchMessage(msg);
+            } finally {
+                mMainThreadNanos.addAndGet(System.nanoTime() - startNanos);
+            }
+        }
+    }
 }
@@ -38,14 +38,20 @@ import com.streamwide.smartms.altbeacon.beacon.logging.Logger;
 import com.streamwide.smartms.altbeacon.beacon.logging.Loggers;
 import com.streamwide.smartms.altbeacon.beacon.service.BeaconService;
 import com.streamwide.smartms.altbeacon.beacon.service.Callback;
+import com.streamwide.smartms.altbeacon.beacon.service.ExtraDataBeaconTracker;
 import com.streamwide.smartms.altbeacon.beacon.service.MonitoringStatus;
 import com.streamwide.smartms.altbeacon.beacon.service.RangeState;
 import com.streamwide.smartms.altbeacon.beacon.service.RangedBeacon;
 import com.streamwide.smartms.altbeacon.beacon.service.RegionMonitoringState;
+import com.streamwide.smartms.altbeacon.beacon.service.RssiFilter;
+import com.streamwide.smartms.altbeacon.beacon.service.RssiFilterClassFactory;
 import com.streamwide.smartms.altbeacon.beacon.service.RunningAverageRssiFilter;
 import com.streamwide.smartms.altbeacon.beacon.service.ScanJobScheduler;
+import com.streamwide.smartms.altbeacon.beacon.service.ScanOverflowPolicy;
+import com.streamwide.smartms.altbeacon.beacon.service.ScanProcessingStats;
 import com.streamwide.smartms.altbeacon.beacon.service.SettingsData;
 import com.streamwide.smartms.altbeacon.beacon.service.StartRMData;
+import com.streamwide.smartms.altbeacon.beacon.service.scanner.DistinctPacketDetector;
 import com.streamwide.smartms.altbeacon.beacon.service.scanner.NonBeaconLeScanCallback;
 import com.streamwide.smartms.altbeacon.beacon.simulator.BeaconSimulator;
 import com.streamwide.smartms.altbeacon.beacon.utils.ProcessUtils;
@@ -63,6 +69,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 
 /**
  * A class used to set up interaction with beacons from an <code>Activity</code> or <code>Service</code>.
@@ -1137,6 +1144,8 @@ public class BeaconManager {
     public static void setRssiFilterImplClass(@NonNull Class c) {
         warnIfScannerNotInSameProcess();
         rssiFilterImplClass = c;
+        sRssiFilterImplClassFactory = c == RunningAverageRssiFilter.class
+                ? new RunningAverageRssiFilter.Factory() : new RssiFilterClassFactory(c);
     }
 
     @NonNull
@@ -1144,6 +1153,399 @@ public class BeaconManager {
         return rssiFilterImplClass;
     }
 
+    @NonNull
+    private static RssiFilter.Factory sRssiFilterImplClassFactory = new RunningAverageRssiFilter.Factory();
+    @Nullable
+    private static RssiFilter.Factory sRssiFilterFactory = null;
+    @NonNull
+    private static final Map<Region, RssiFilter.Factory> sRegionRssiFilterFactories = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the factory creating the RSSI filter of each ranged beacon, for all regions without
+     * their own factory.  Takes precedence over {@link #setRssiFilterImplClass(Class)}, which
+     * constructs filters by reflection.  Applies to beacons first seen from now on.
+     *
+     * @param factory the factory to use, or null to go back to the class set with
+     *                {@link #setRssiFilterImplClass(Class)}
+     */
+    public static void setRssiFilterFactory(@Nullable RssiFilter.Factory factory) {
+        warnIfScannerNotInSameProcess();
+        sRssiFilterFactory = factory;
+    }
+
+    /**
+     * Sets the factory creating the RSSI filter of each beacon ranged in a region, so that
+     * regions may use differently tuned filters.  Takes effect the next time ranging of the
+     * region is started.
+     *
+     * @param region  the region, matched by unique id
+     * @param factory the factory to use, or null to use the factory for all regions
+     */
+    public static void setRssiFilterFactory(@NonNull Region region, @Nullable RssiFilter.Factory factory) {
+        warnIfScannerNotInSameProcess();
+        if (factory == null) {
+            sRegionRssiFilterFactories.remove(region);
+        } else {
+            sRegionRssiFilterFactories.put(region, factory);
+        }
+    }
+
+    @NonNull
+    public static RssiFilter.Factory getRssiFilterFactory() {
+        RssiFilter.Factory factory = sRssiFilterFactory;
+        return factory != null ? factory : sRssiFilterImplClassFactory;
+    }
+
+    /**
+     * @return the factory set for the region, or else the factory for all regions
+     */
+    @NonNull
+    public static RssiFilter.Factory getRssiFilterFactory(@NonNull Region region) {
+        RssiFilter.Factory factory = sRegionRssiFilterFactories.get(region);
+        return factory != null ? factory : getRssiFilterFactory();
+    }
+
+    /**
+     * @return the factory set for the region only, or null if regions use the factory for all
+     * regions, as it is when their beacons are first seen
+     */
+    @Nullable
+    public static RssiFilter.Factory getRegionRssiFilterFactory(@NonNull Region region) {
+        return sRegionRssiFilterFactories.get(region);
+    }
+
+    private static volatile boolean sDistanceRssiRounded = false;
+
+    /**
+     * Sets whether the default model specific distance calculator rounds running average RSSI
+     * values to the nearest whole dBm, so that distances are read from tables computed once per
+     * txPower instead of evaluating the curve of the device model for every beacon.  Distances
+     * then differ from the exact ones by at most half a dBm of RSSI.  Defaults to false.
+     *
+     * @param rounded true to round RSSI values when calculating distances
+     */
+    public static void setDistanceRssiRounded(boolean rounded) {
+        warnIfScannerNotInSameProcess();
+        sDistanceRssiRounded = rounded;
+    }
+
+    public static boolean isDistanceRssiRounded() {
+        return sDistanceRssiRounded;
+    }
+
+    /**
+     * Default number of scanned packets that may wait to be processed
+     */
+    public static final int DEFAULT_SCAN_QUEUE_CAPACITY = 1024;
+
+    private static int sScanQueueCapacity = DEFAULT_SCAN_QUEUE_CAPACITY;
+    private static int sScanProcessingThreadCount = Runtime.getRuntime().availableProcessors() + 1;
+    @NonNull
+    private static ScanOverflowPolicy sScanOverflowPolicy = ScanOverflowPolicy.DROP_NEWEST;
+
+    /**
+     * Sets how many scanned packets may wait to be processed before the
+     * {@link ScanOverflowPolicy} applies.  The capacity is rounded up to a power of two.  Takes
+     * effect the next time scanning threads are started.
+     *
+     * @param capacity number of packets
+     */
+    public static void setScanQueueCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Scan queue capacity must be > 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sScanQueueCapacity = capacity;
+    }
+
+    public static int getScanQueueCapacity() {
+        return sScanQueueCapacity;
+    }
+
+    /**
+     * Sets the number of threads parsing scanned packets.  Defaults to the number of processors
+     * plus one.  Takes effect the next time scanning threads are started.
+     *
+     * @param threadCount number of threads
+     */
+    public static void setScanProcessingThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Scan processing thread count must be > 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sScanProcessingThreadCount = threadCount;
+    }
+
+    public static int getScanProcessingThreadCount() {
+        return sScanProcessingThreadCount;
+    }
+
+    /**
+     * Sets what happens to scanned packets that arrive while the processing queue is full.
+     * Defaults to {@link ScanOverflowPolicy#DROP_NEWEST}.  Takes effect the next time scanning
+     * threads are started.
+     *
+     * @param overflowPolicy the policy to apply
+     */
+    public static void setScanOverflowPolicy(@NonNull ScanOverflowPolicy overflowPolicy) {
+        warnIfScannerNotInSameProcess();
+        sScanOverflowPolicy = overflowPolicy;
+    }
+
+    @NonNull
+    public static ScanOverflowPolicy getScanOverflowPolicy() {
+        return sScanOverflowPolicy;
+    }
+
+    /**
+     * Executor to pass to {@link #setScanProcessingExecutor(Executor)} to process each scanned
+     * packet on the thread delivering scan results, without queueing it.  This gives the lowest
+     * latency, but delays the delivery of the next scan results while a packet is processed, so
+     * it only suits low packet volumes.
+     */
+    @NonNull
+    public static final Executor SCAN_PROCESSING_INLINE = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Nullable
+    private static Executor sScanProcessingExecutor = null;
+
+    /**
+     * Sets the executor processing scanned packets, instead of the threads owned by the library.
+     * <p>
+     * Packets are still queued and split by device as configured with
+     * {@link #setScanQueueCapacity(int)} and {@link #setScanProcessingThreadCount(int)}, but each
+     * queue is drained by short tasks submitted to this executor.  At most one task per queue is
+     * submitted at a time, so a single thread executor is enough to process all packets.  The
+     * library never shuts the executor down.  When scanning stops, no new tasks are submitted, and
+     * tasks already submitted finish processing the packets that were queued.  If the executor
+     * rejects a task, the packets stay queued until the next packet is received.
+     * <p>
+     * Pass {@link #SCAN_PROCESSING_INLINE} to process packets on the thread delivering scan
+     * results, or null to go back to the threads owned by the library.  Takes effect the next
+     * time scanning threads are started.
+     *
+     * @param executor the executor to use, or null
+     */
+    public static void setScanProcessingExecutor(@Nullable Executor executor) {
+        warnIfScannerNotInSameProcess();
+        sScanProcessingExecutor = executor;
+    }
+
+    @Nullable
+    public static Executor getScanProcessingExecutor() {
+        return sScanProcessingExecutor;
+    }
+
+    /**
+     * Default time, in milliseconds, a partial batch of scanned packets is held back before it is
+     * processed
+     */
+    public static final long DEFAULT_SCAN_BATCH_WINDOW_MILLIS = 50;
+
+    private static int sScanBatchSize = 1;
+    private static long sScanBatchWindowMillis = DEFAULT_SCAN_BATCH_WINDOW_MILLIS;
+
+    /**
+     * Sets how many scanned packets are collected before they are queued for processing together.
+     * Batching reduces the work done on the main thread for each packet in dense environments,
+     * at the cost of detecting beacons slightly later.  A partial batch is queued after the
+     * window set with {@link #setScanBatchWindowMillis(long)}, and at the end of each scan
+     * cycle.  Defaults to 1, which queues each packet as soon as it is received.  Only applies
+     * to scans on Android 5.0+.
+     *
+     * @param batchSize number of packets
+     */
+    public static void setScanBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Scan batch size must be > 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sScanBatchSize = batchSize;
+    }
+
+    public static int getScanBatchSize() {
+        return sScanBatchSize;
+    }
+
+    /**
+     * Sets how long a partial batch of scanned packets may be held back before it is queued for
+     * processing.  Defaults to {@link #DEFAULT_SCAN_BATCH_WINDOW_MILLIS}.
+     *
+     * @param windowMillis time in milliseconds
+     * @see #setScanBatchSize(int)
+     */
+    public static void setScanBatchWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Scan batch window must be >= 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sScanBatchWindowMillis = windowMillis;
+    }
+
+    public static long getScanBatchWindowMillis() {
+        return sScanBatchWindowMillis;
+    }
+
+    private static boolean sMainThreadScanCyclingEnabled = false;
+
+    /**
+     * Runs the scan cycle timers and hands scan results over to processing on the main thread, as
+     * earlier versions of this library did, instead of on the background thread of the scanner.
+     * Notifier callbacks are dispatched on the main thread either way.  The time the scanner
+     * spends on the main thread is reported by {@link ScanProcessingStats}, to compare both
+     * settings.  Takes effect the next time the scanner is created.
+     *
+     * @param enabled true to use the main thread
+     */
+    public static void setMainThreadScanCyclingEnabled(boolean enabled) {
+        warnIfScannerNotInSameProcess();
+        sMainThreadScanCyclingEnabled = enabled;
+    }
+
+    public static boolean isMainThreadScanCyclingEnabled() {
+        return sMainThreadScanCyclingEnabled;
+    }
+
+    private static int sDistinctPacketTrackingCapacity = DistinctPacketDetector.DEFAULT_CAPACITY;
+    private static boolean sDistinctPacketExactVerificationEnabled = false;
+
+    /**
+     * Sets how many packets are remembered during a scan cycle to find out whether the device
+     * reports the same packet more than once per scan, which lets the library avoid restarting
+     * scans.  When more distinct packets are seen in a scan cycle, the oldest ones are forgotten,
+     * as counted by {@link ScanProcessingStats#getDistinctPacketSaturations()}.  Defaults to
+     * {@link DistinctPacketDetector#DEFAULT_CAPACITY}.  Takes effect the next time the scanner is
+     * created.
+     *
+     * @param capacity number of packets
+     */
+    public static void setDistinctPacketTrackingCapacity(int capacity) {
+        if (capacity < 1 || capacity > DistinctPacketDetector.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Distinct packet tracking capacity must be > 0 and <= "
+                    + DistinctPacketDetector.MAX_CAPACITY + ".");
+        }
+        warnIfScannerNotInSameProcess();
+        sDistinctPacketTrackingCapacity = capacity;
+    }
+
+    public static int getDistinctPacketTrackingCapacity() {
+        return sDistinctPacketTrackingCapacity;
+    }
+
+    /**
+     * Compares remembered packets byte by byte rather than by their 64 bit fingerprint alone.  The
+     * fingerprint is accurate enough for this purpose, so this is only useful to rule out
+     * collisions, at the cost of a copy of each remembered packet.  Takes effect the next time the
+     * scanner is created.
+     *
+     * @param enabled true to compare packets byte by byte
+     * @see #setDistinctPacketTrackingCapacity(int)
+     */
+    public static void setDistinctPacketExactVerificationEnabled(boolean enabled) {
+        warnIfScannerNotInSameProcess();
+        sDistinctPacketExactVerificationEnabled = enabled;
+    }
+
+    public static boolean isDistinctPacketExactVerificationEnabled() {
+        return sDistinctPacketExactVerificationEnabled;
+    }
+
+    private static long sDuplicatePacketSuppressionMillis = 0;
+
+    /**
+     * Drops the packets identical to one received from the same device less than the given time
+     * ago, before they are parsed.  This saves processing in environments where devices repeat
+     * the same advertisement many times per second, at the cost of fewer RSSI samples for
+     * ranging: each distinct packet is processed at most once per window, whatever the scan
+     * cycles.  Dropped packets are counted by {@link ScanProcessingStats#getPacketsSuppressed()}.
+     * Defaults to 0, which processes every packet.  Takes effect the next time the scanner is
+     * created.
+     *
+     * @param millis time in milliseconds, or 0 to disable
+     */
+    public static void setDuplicatePacketSuppressionMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Duplicate packet suppression time must be >= 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sDuplicatePacketSuppressionMillis = millis;
+    }
+
+    public static long getDuplicatePacketSuppressionMillis() {
+        return sDuplicatePacketSuppressionMillis;
+    }
+
+    private static int sExtraDataBeaconTrackingMaxSize = ExtraDataBeaconTracker.DEFAULT_MAX_SIZE;
+    private static long sExtraDataBeaconTrackingTtlMillis = ExtraDataBeaconTracker.DEFAULT_TTL_MILLIS;
+
+    /**
+     * Sets the maximum number of devices whose beacons are tracked to merge the extra data frames
+     * they send, such as Eddystone telemetry, into their main beacon.  When more devices are
+     * seen, the least recently seen one is forgotten.  Defaults to
+     * {@link ExtraDataBeaconTracker#DEFAULT_MAX_SIZE}.  Takes effect the next time the scanner is
+     * created.
+     *
+     * @param maxSize number of devices
+     */
+    public static void setExtraDataBeaconTrackingMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Extra data beacon tracking max size must be > 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sExtraDataBeaconTrackingMaxSize = maxSize;
+    }
+
+    public static int getExtraDataBeaconTrackingMaxSize() {
+        return sExtraDataBeaconTrackingMaxSize;
+    }
+
+    /**
+     * Sets how long a device whose beacons are tracked to merge extra data frames may go unseen
+     * before it is forgotten.  Defaults to {@link ExtraDataBeaconTracker#DEFAULT_TTL_MILLIS}.
+     * Takes effect the next time the scanner is created.
+     *
+     * @param ttlMillis time in milliseconds
+     * @see #setExtraDataBeaconTrackingMaxSize(int)
+     */
+    public static void setExtraDataBeaconTrackingTtlMillis(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Extra data beacon tracking TTL must be > 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sExtraDataBeaconTrackingTtlMillis = ttlMillis;
+    }
+
+    public static long getExtraDataBeaconTrackingTtlMillis() {
+        return sExtraDataBeaconTrackingTtlMillis;
+    }
+
+    private static long sMonitoringStatusFlushIntervalMillis = MonitoringStatus.DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    /**
+     * Sets how often at most the time monitored region states were last confirmed is written to
+     * disk while no region changes state.  That time decides whether the states are restored
+     * after the process restarts, so it may lag on disk by up to this interval.  Zero writes it
+     * on every detected beacon.  Defaults to {@link MonitoringStatus#DEFAULT_FLUSH_INTERVAL_MILLIS}.
+     *
+     * @param intervalMillis time in milliseconds
+     */
+    public static void setMonitoringStatusFlushIntervalMillis(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Monitoring status flush interval must be >= 0.");
+        }
+        warnIfScannerNotInSameProcess();
+        sMonitoringStatusFlushIntervalMillis = intervalMillis;
+    }
+
+    public static long getMonitoringStatusFlushIntervalMillis() {
+        return sMonitoringStatusFlushIntervalMillis;
+    }
+
     /**
      * Allow the library to use a tracking cache
      *
@@ -32,6 +32,7 @@ import android.os.ParcelUuid;
 import android.os.PowerManager;
 import android.os.SystemClock;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
@@ -55,9 +56,17 @@ public class CycledLeScannerForLollipop extends CycledLeScanner {
     protected boolean mMainScanCycleActive = false;
     private final BeaconManager mBeaconManager;
     private final PowerManager mPowerManager;
+    @NonNull
+    private final ScanBatcher mScanBatcher;
 
     public CycledLeScannerForLollipop(@NonNull Context context, long scanPeriod, long betweenScanPeriod, boolean backgroundFlag, @NonNull CycledLeScanCallback cycledLeScanCallback, @NonNull BluetoothCrashResolver crashResolver) {
-        super(context, scanPeriod, betweenScanPeriod, backgroundFlag, cycledLeScanCallback, crashResolver);
+        this(context, scanPeriod, betweenScanPeriod, backgroundFlag, new ScanBatcher(cycledLeScanCallback), crashResolver);
+    }
+
+    private CycledLeScannerForLollipop(@NonNull Context context, long scanPeriod, long betweenScanPeriod, boolean backgroundFlag, @NonNull ScanBatcher scanBatcher, @NonNull BluetoothCrashResolver crashResolver) {
+        super(context, scanPeriod, betweenScanPeriod, backgroundFlag, scanBatcher, crashResolver);
+        mScanBatcher = scanBatcher;
+        mScanBatcher.setHandler(mScanCallbackHandler);
         mBeaconManager = BeaconManager.getInstanceForApplication(mContext);
         mPowerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
     }
@@ -153,7 +162,7 @@ public class CycledLeScannerForLollipop extends CycledLeScanner {
                     } else {
                         // report the results up the chain
                         LogManager.d(TAG, "Delivering Android L background scanning results");
-                        mCycledLeScanCallback.onCycleEnd();
+                        notifyCycleEnd();
                     }
                 }
             }
@@ -242,7 +251,7 @@ public class CycledLeScannerForLollipop extends CycledLeScanner {
         }
     }
 
-    @MainThread
+    @AnyThread
     public void stop() {
         super.stop();
         LogManager.d(TAG, "unregistering SamsungScreenOffReceiver as we stop the cycled scanner");
@@ -355,36 +364,48 @@ public class CycledLeScannerForLollipop extends CycledLeScanner {
             leScanCallback = new ScanCallback() {
                 @MainThread
                 @Override
-                public void onScanResult(int callbackType, ScanResult scanResult) {
-                    if (LogManager.isVerboseLoggingEnabled()) {
-                        LogManager.d(TAG, "got record");
-                        List<ParcelUuid> uuids = scanResult.getScanRecord().getServiceUuids();
-                        if (uuids != null) {
-                            for (ParcelUuid uuid : uuids) {
-                                LogManager.d(TAG, "with service uuid: " + uuid);
+                public void onScanResult(int callbackType, final ScanResult scanResult) {
+                    runOnScanCycleThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (LogManager.isVerboseLoggingEnabled()) {
+                                LogManager.d(TAG, "got record");
+                                List<ParcelUuid> uuids = scanResult.getScanRecord().getServiceUuids();
+                                if (uuids != null) {
+                                    for (ParcelUuid uuid : uuids) {
+                                        LogManager.d(TAG, "with service uuid: " + uuid);
+                                    }
+                                }
+                            }
+                            mCycledLeScanCallback.onLeScan(scanResult.getDevice(),
+                                    scanResult.getRssi(), scanResult.getScanRecord().getBytes(),
+                                    System.currentTimeMillis() - SystemClock.elapsedRealtime() + scanResult.getTimestampNanos() / 1000000);
+                            if (mBackgroundLScanStartTime > 0) {
+                                LogManager.d(TAG, "got a filtered scan result in the background.");
                             }
                         }
-                    }
-                    mCycledLeScanCallback.onLeScan(scanResult.getDevice(),
-                            scanResult.getRssi(), scanResult.getScanRecord().getBytes(),
-                            System.currentTimeMillis() - SystemClock.elapsedRealtime() + scanResult.getTimestampNanos() / 1000000);
-                    if (mBackgroundLScanStartTime > 0) {
-                        LogManager.d(TAG, "got a filtered scan result in the background.");
-                    }
+                    });
                 }
 
                 @MainThread
                 @Override
-                public void onBatchScanResults(List<ScanResult> results) {
-                    LogManager.d(TAG, "got batch records");
-                    for (ScanResult scanResult : results) {
-                        mCycledLeScanCallback.onLeScan(scanResult.getDevice(),
-                                scanResult.getRssi(), scanResult.getScanRecord().getBytes(),
-                                System.currentTimeMillis() - SystemClock.elapsedRealtime() + scanResult.getTimestampNanos() / 1000000);
-                    }
-                    if (mBackgroundLScanStartTime > 0) {
-                        LogManager.d(TAG, "got a filtered batch scan result in the background.");
-                    }
+                public void onBatchScanResults(final List<ScanResult> results) {
+                    runOnScanCycleThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            LogManager.d(TAG, "got batch records");
+                            for (ScanResult scanResult : results) {
+                                mScanBatcher.addBatchResult(scanResult.getDevice(),
+                                        scanResult.getRssi(), scanResult.getScanRecord().getBytes(),
+                                        System.currentTimeMillis() - SystemClock.elapsedRealtime() + scanResult.getTimestampNanos() / 1000000);
+                            }
+                            // Hand the results over as one batch rather than waiting for the batch window
+                            mScanBatcher.flush();
+                            if (mBackgroundLScanStartTime > 0) {
+                                LogManager.d(TAG, "got a filtered batch scan result in the background.");
+                            }
+                        }
+                    });
                 }
 
                 @MainThread
@@ -434,13 +455,18 @@ public class CycledLeScannerForLollipop extends CycledLeScanner {
     private BroadcastReceiver mSamsungScreenOffReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, @NonNull Intent intent) {
-            if (!mMainScanCycleActive) {
-                LogManager.d(TAG, "Screen has gone off while outside the main scan cycle on Samsung.  We will do nothing.");
-            } else {
-                LogManager.d(TAG, "Screen has gone off while using a wildcard scan filter on Samsung.  Restarting scanner with non-empty filters.");
-                stopScan();
-                startScan();
-            }
+            runOnScanCycleThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mMainScanCycleActive) {
+                        LogManager.d(TAG, "Screen has gone off while outside the main scan cycle on Samsung.  We will do nothing.");
+                    } else {
+                        LogManager.d(TAG, "Screen has gone off while using a wildcard scan filter on Samsung.  Restarting scanner with non-empty filters.");
+                        stopScan();
+                        startScan();
+                    }
+                }
+            });
         }
     };
 }
@@ -19,6 +19,8 @@ import android.bluetooth.BluetoothDevice;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.streamwide.smartms.altbeacon.bluetooth.BleAdvertisement;
+
 /**
  * A specific beacon parser designed to parse only AltBeacons from raw BLE packets detected by
  * Android.  By default, this is the only <code>BeaconParser</code> that is used by the library.
@@ -63,4 +65,22 @@ public class AltBeaconParser extends BeaconParser {
         return fromScanData(scanData, rssi, device, timestampMs, new AltBeacon());
     }
 
+    /**
+     * Construct an AltBeacon from a Bluetooth LE packet that has already been split into PDUs
+     *
+     * @param advertisement The indexed packet bytes
+     * @param rssi          The measured signal strength of the packet
+     * @param device        The Bluetooth device that was detected
+     * @param timestampMs   The timestamp in milliseconds of the scan execution
+     * @return An instance of an <code>Beacon</code>
+     */
+    @Override
+    @Nullable
+    public Beacon fromAdvertisement(@NonNull BleAdvertisement advertisement, int rssi, @Nullable BluetoothDevice device, long timestampMs) {
+        if (!isLibraryParser()) {
+            return fromScanData(advertisement.getBytes(), rssi, device, timestampMs);
+        }
+        return fromAdvertisement(advertisement, rssi, device, timestampMs, new AltBeacon());
+    }
+
 }
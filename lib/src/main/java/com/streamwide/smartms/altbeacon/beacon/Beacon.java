@@ -189,6 +189,12 @@ public class Beacon implements Parcelable, Serializable {
      */
     protected long mLastCycleDetectionTimestamp = 0L;
 
+    /**
+     * Hash of the identifiers, computed on first use.  Zero until computed.  Any code replacing
+     * or modifying mIdentifiers after the beacon has been hashed must reset it.
+     */
+    private transient int mIdentifiersHashCode = 0;
+
     /**
      * Required for making object Parcelable.  If you override this class, you must provide an
      * equivalent version of this method.
@@ -302,6 +308,7 @@ public class Beacon implements Parcelable, Serializable {
         this.mManufacturer = otherBeacon.mManufacturer;
         this.mFirstCycleDetectionTimestamp = otherBeacon.mFirstCycleDetectionTimestamp;
         this.mLastCycleDetectionTimestamp = otherBeacon.mLastCycleDetectionTimestamp;
+        this.mIdentifiersHashCode = otherBeacon.mIdentifiersHashCode;
     }
 
     /**
@@ -611,17 +618,31 @@ public class Beacon implements Parcelable, Serializable {
     }
 
     /**
-     * Calculate a hashCode for this beacon
+     * Calculate a hashCode for this beacon from the bytes of its identifiers, and its mac address
+     * when hardware equality is enforced.  The identifier part is computed once and cached.
      *
      * @return
      */
     @Override
     public int hashCode() {
-        StringBuilder sb = toStringBuilder();
-        if (sHardwareEqualityEnforced) {
-            sb.append(mBluetoothAddress);
+        int hash = identifiersHashCode();
+        if (sHardwareEqualityEnforced && mBluetoothAddress != null) {
+            hash = 31 * hash + mBluetoothAddress.hashCode();
+        }
+        return hash;
+    }
+
+    private int identifiersHashCode() {
+        int hash = mIdentifiersHashCode;
+        if (hash == 0) {
+            hash = 1;
+            for (int i = 0, size = mIdentifiers.size(); i < size; i++) {
+                Identifier identifier = mIdentifiers.get(i);
+                hash = 31 * hash + (identifier == null ? 0 : identifier.hashCode());
+            }
+            mIdentifiersHashCode = hash;
         }
-        return sb.toString().hashCode();
+        return hash;
     }
 
     /**
@@ -629,6 +650,9 @@ public class Beacon implements Parcelable, Serializable {
      */
     @Override
     public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        }
         if (that == null) {
             return false;
         }
@@ -636,9 +660,20 @@ public class Beacon implements Parcelable, Serializable {
             return false;
         }
         Beacon thatBeacon = (Beacon) that;
-        if (!this.mIdentifiers.equals(thatBeacon.mIdentifiers)) {
+        if (this.identifiersHashCode() != thatBeacon.identifiersHashCode()) {
+            return false;
+        }
+        int size = this.mIdentifiers.size();
+        if (size != thatBeacon.mIdentifiers.size()) {
             return false;
         }
+        for (int i = 0; i < size; i++) {
+            Identifier identifier = this.mIdentifiers.get(i);
+            Identifier thatIdentifier = thatBeacon.mIdentifiers.get(i);
+            if (identifier == null ? thatIdentifier != null : !identifier.equals(thatIdentifier)) {
+                return false;
+            }
+        }
         return sHardwareEqualityEnforced ?
                 this.getBluetoothAddress().equals(thatBeacon.getBluetoothAddress()) :
                 true;
@@ -787,6 +822,7 @@ public class Beacon implements Parcelable, Serializable {
          */
         @NonNull
         public Beacon build() {
+            mBeacon.mIdentifiersHashCode = 0;
             if (mId1 != null) {
                 mBeacon.mIdentifiers.add(mId1);
                 if (mId2 != null) {
@@ -830,6 +866,7 @@ public class Beacon implements Parcelable, Serializable {
             mId2 = null;
             mId3 = null;
             mBeacon.mIdentifiers = identifiers;
+            mBeacon.mIdentifiersHashCode = 0;
             return this;
         }
 
@@ -0,0 +1,155 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package com.streamwide.smartms.altbeacon.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable, pre-compiled form of a {@link BeaconParser} layout.
+ * <p>
+ * The layout string is parsed into boxed lists by {@link BeaconParser#setBeaconLayout(String)}.
+ * Those lists are flattened here once into primitive offset tables, and the byte sequences that
+ * must be matched (beacon type code and service UUID) are pre-computed, so that
+ * {@link BeaconParser#fromScanData} does not need to allocate or unbox anything per packet.
+ * <p>
+ * Instances of this class are immutable, so those can be shared without problem between threads.
+ */
+final class BeaconLayoutPlan {
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    final int identifierCount;
+    @NonNull
+    final int[] identifierStartOffsets;
+    @NonNull
+    final int[] identifierEndOffsets;
+    @NonNull
+    final boolean[] identifierLittleEndianFlags;
+    @NonNull
+    final boolean[] identifierVariableLengthFlags;
+
+    final int dataCount;
+    @NonNull
+    final int[] dataStartOffsets;
+    @NonNull
+    final int[] dataEndOffsets;
+    @NonNull
+    final boolean[] dataLittleEndianFlags;
+
+    /**
+     * True when the layout declares a matching beacon type code ("m:" term)
+     */
+    final boolean hasTypeCode;
+    final int typeCodeStartOffset;
+    final int typeCodeEndOffset;
+    /**
+     * Big endian bytes of the beacon type code.  Empty if no type code must be matched.
+     */
+    @NonNull
+    final byte[] typeCodeBytes;
+
+    /**
+     * True when the layout declares a service UUID ("s:" term) that must be matched
+     */
+    final boolean matchesServiceUuid;
+    final int serviceUuidStartOffset;
+    /**
+     * Little endian bytes of the service UUID, or null if the layout has no service UUID.
+     */
+    @Nullable
+    final byte[] serviceUuidBytes;
+    /**
+     * The value stored in {@link Beacon#mServiceUuid} for beacons decoded with this layout
+     */
+    final int beaconServiceUuid;
+
+    final boolean hasPowerField;
+    final int powerStartOffset;
+    final int powerEndOffset;
+    final boolean hasPowerCorrection;
+    final int powerCorrection;
+
+    final int layoutSize;
+    final boolean allowPduOverflow;
+
+    private BeaconLayoutPlan(@NonNull BeaconParser parser) {
+        identifierCount = parser.mIdentifierStartOffsets.size();
+        identifierStartOffsets = new int[identifierCount];
+        identifierEndOffsets = new int[identifierCount];
+        identifierLittleEndianFlags = new boolean[identifierCount];
+        identifierVariableLengthFlags = new boolean[identifierCount];
+        for (int i = 0; i < identifierCount; i++) {
+            identifierStartOffsets[i] = parser.mIdentifierStartOffsets.get(i);
+            identifierEndOffsets[i] = parser.mIdentifierEndOffsets.get(i);
+            identifierLittleEndianFlags[i] = parser.mIdentifierLittleEndianFlags.get(i);
+            identifierVariableLengthFlags[i] = parser.mIdentifierVariableLengthFlags.get(i);
+        }
+
+        dataCount = parser.mDataStartOffsets.size();
+        dataStartOffsets = new int[dataCount];
+        dataEndOffsets = new int[dataCount];
+        dataLittleEndianFlags = new boolean[dataCount];
+        for (int i = 0; i < dataCount; i++) {
+            dataStartOffsets[i] = parser.mDataStartOffsets.get(i);
+            dataEndOffsets[i] = parser.mDataEndOffsets.get(i);
+            dataLittleEndianFlags[i] = parser.mDataLittleEndianFlags.get(i);
+        }
+
+        hasTypeCode = parser.mMatchingBeaconTypeCodeEndOffset != null;
+        typeCodeStartOffset = parser.getMatchingBeaconTypeCodeStartOffset();
+        typeCodeEndOffset = parser.getMatchingBeaconTypeCodeEndOffset();
+        if (hasTypeCode && typeCodeStartOffset >= 0) {
+            typeCodeBytes = BeaconParser.longToByteArray(parser.getMatchingBeaconTypeCode(),
+                    typeCodeEndOffset - typeCodeStartOffset + 1);
+        } else {
+            typeCodeBytes = EMPTY_BYTES;
+        }
+
+        Long serviceUuid = parser.mServiceUuid;
+        if (serviceUuid != null) {
+            serviceUuidStartOffset = parser.mServiceUuidStartOffset;
+            serviceUuidBytes = BeaconParser.longToByteArray(serviceUuid,
+                    parser.mServiceUuidEndOffset - serviceUuidStartOffset + 1, false);
+            matchesServiceUuid = serviceUuid != -1;
+            beaconServiceUuid = (int) serviceUuid.longValue();
+        } else {
+            serviceUuidStartOffset = 0;
+            serviceUuidBytes = null;
+            matchesServiceUuid = false;
+            beaconServiceUuid = -1;
+        }
+
+        hasPowerField = parser.mPowerStartOffset != null;
+        powerStartOffset = hasPowerField ? parser.mPowerStartOffset : 0;
+        powerEndOffset = hasPowerField && parser.mPowerEndOffset != null ? parser.mPowerEndOffset : 0;
+        hasPowerCorrection = parser.mDBmCorrection != null;
+        powerCorrection = hasPowerCorrection ? parser.mDBmCorrection : 0;
+
+        layoutSize = parser.mLayoutSize != null ? parser.mLayoutSize : 0;
+        allowPduOverflow = Boolean.TRUE.equals(parser.mAllowPduOverflow);
+    }
+
+    /**
+     * Compiles the current layout of the given parser.
+     *
+     * @param parser the parser whose layout fields should be compiled
+     * @return an immutable execution plan for the layout
+     */
+    @NonNull
+    static BeaconLayoutPlan compile(@NonNull BeaconParser parser) {
+        return new BeaconLayoutPlan(parser);
+    }
+}
@@ -22,6 +22,7 @@ import androidx.annotation.Nullable;
 
 import com.streamwide.smartms.altbeacon.beacon.logger.Logger;
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
+import com.streamwide.smartms.altbeacon.beacon.utils.ByteUtils;
 import com.streamwide.smartms.altbeacon.bluetooth.BleAdvertisement;
 import com.streamwide.smartms.altbeacon.bluetooth.Pdu;
 
@@ -111,6 +112,13 @@ public class BeaconParser implements Serializable {
     @NonNull
     protected List<BeaconParser> extraParsers = new ArrayList<>();
 
+    /**
+     * The layout fields above compiled into primitive tables.  Rebuilt whenever the layout changes,
+     * and lazily after deserialization.
+     */
+    @Nullable
+    private transient volatile BeaconLayoutPlan mLayoutPlan;
+
 
     /**
      * Makes a new BeaconParser.  Should normally be immediately followed by a call to #setLayout
@@ -309,6 +317,7 @@ public class BeaconParser implements Serializable {
             }
         }
         mLayoutSize = calculateLayoutSize();
+        mLayoutPlan = BeaconLayoutPlan.compile(this);
         return this;
     }
 
@@ -381,6 +390,7 @@ public class BeaconParser implements Serializable {
      */
     public void setAllowPduOverflow(@Nullable Boolean enabled) {
         mAllowPduOverflow = enabled;
+        mLayoutPlan = null;
     }
 
     /**
@@ -465,192 +475,190 @@ public class BeaconParser implements Serializable {
 
     @Nullable
     protected Beacon fromScanData(@Nullable byte[] bytesToProcess, int rssi, @Nullable BluetoothDevice device, long timestampMs, @NonNull Beacon beacon) {
-        BleAdvertisement advert = new BleAdvertisement(bytesToProcess);
+        return fromAdvertisement(new BleAdvertisement(bytesToProcess), rssi, device, timestampMs, beacon);
+    }
+
+    /**
+     * Construct a Beacon from a Bluetooth LE packet that has already been split into PDUs.  This
+     * allows several parsers to look at the same packet without each of them indexing it again.
+     * <p>
+     * Only the parsers of the library parse the indexed packet directly.  For any subclass, this
+     * method calls {@link #fromScanData(byte[], int, BluetoothDevice, long)} with the packet
+     * bytes, so that overrides of either <code>fromScanData</code> method keep being called, and
+     * the packet is indexed again.
+     *
+     * @param advertisement The indexed packet bytes
+     * @param rssi          The measured signal strength of the packet
+     * @param device        The Bluetooth device that was detected
+     * @param timestampMs   The timestamp in milliseconds of the scan execution
+     * @return An instance of a <code>Beacon</code>, or null if the packet does not match this layout
+     */
+    @Nullable
+    public Beacon fromAdvertisement(@NonNull BleAdvertisement advertisement, int rssi, @Nullable BluetoothDevice device, long timestampMs) {
+        if (!isLibraryParser()) {
+            return fromScanData(advertisement.getBytes(), rssi, device, timestampMs);
+        }
+        return fromAdvertisement(advertisement, rssi, device, timestampMs, new Beacon());
+    }
+
+    /**
+     * @return true if this parser is one of the library, and not a subclass that may override how
+     * scan data are parsed
+     */
+    boolean isLibraryParser() {
+        return getClass() == BeaconParser.class || getClass() == AltBeaconParser.class;
+    }
+
+    @Nullable
+    protected Beacon fromAdvertisement(@NonNull BleAdvertisement advert, int rssi, @Nullable BluetoothDevice device, long timestampMs, @NonNull Beacon beacon) {
+        final BeaconLayoutPlan plan = getLayoutPlan();
+        byte[] bytesToProcess = advert.getBytes();
         boolean parseSucceeded = false;
-        ArrayList<Pdu> pdusToParse = new ArrayList<Pdu>();
+        int pdusToParseCount = 0;
         int startByte = 0;
-        ArrayList<Identifier> identifiers = new ArrayList<Identifier>();
-        ArrayList<Long> dataFields = new ArrayList<Long>();
+        ArrayList<Identifier> identifiers = null;
+        ArrayList<Long> dataFields = null;
         int txPower = 0;
+        boolean parseFailed = false;
 
-
-        for (Pdu pdu : advert.getPdus()) {
-            if (pdu.getType() == Pdu.GATT_SERVICE_UUID_PDU_TYPE ||
-                    pdu.getType() == Pdu.MANUFACTURER_DATA_PDU_TYPE) {
-                pdusToParse.add(pdu);
+        for (int pduIndex = 0, pduCount = advert.getPduCount(); pduIndex < pduCount; pduIndex++) {
+            byte pduType = advert.getPduType(pduIndex);
+            if (pduType != Pdu.GATT_SERVICE_UUID_PDU_TYPE &&
+                    pduType != Pdu.MANUFACTURER_DATA_PDU_TYPE) {
                 if (LogManager.isVerboseLoggingEnabled()) {
-                    LogManager.d(TAG, "Processing pdu type %02X: %s with startIndex: %d, endIndex: %d", pdu.getType(), bytesToHex(bytesToProcess), pdu.getStartIndex(), pdu.getEndIndex());
-                }
-            } else {
-                if (LogManager.isVerboseLoggingEnabled()) {
-                    LogManager.d(TAG, "Ignoring pdu type %02X", pdu.getType());
+                    LogManager.d(TAG, "Ignoring pdu type %02X", pduType);
                 }
+                continue;
             }
-        }
-        if (pdusToParse.size() == 0) {
+            pdusToParseCount++;
+            final int pduEndIndex = advert.getPduEndIndex(pduIndex);
+            startByte = advert.getPduStartIndex(pduIndex);
             if (LogManager.isVerboseLoggingEnabled()) {
-                LogManager.d(TAG, "No PDUs to process in this packet.");
+                LogManager.d(TAG, "Processing pdu type %02X: %s with startIndex: %d, endIndex: %d", pduType, bytesToHex(bytesToProcess), startByte, pduEndIndex);
             }
-        } else {
-            boolean parseFailed = false;
-            for (Pdu pduToParse : pdusToParse) {
-                byte[] serviceUuidBytes = null;
-                byte[] typeCodeBytes = {};
-                if (mMatchingBeaconTypeCodeEndOffset != null && mMatchingBeaconTypeCodeStartOffset >= 0) {
-                    typeCodeBytes = longToByteArray(getMatchingBeaconTypeCode(), mMatchingBeaconTypeCodeEndOffset - mMatchingBeaconTypeCodeStartOffset + 1);
-                }
-                if (getServiceUuid() != null) {
-                    serviceUuidBytes = longToByteArray(getServiceUuid(), mServiceUuidEndOffset - mServiceUuidStartOffset + 1, false);
-                }
-                startByte = pduToParse.getStartIndex();
-                boolean patternFound = false;
+            boolean patternFound = false;
 
-                if (getServiceUuid() == null || getServiceUuid() == -1) {
-                    if (mMatchingBeaconTypeCodeEndOffset != null) {
-                        if (byteArraysMatch(bytesToProcess, startByte + mMatchingBeaconTypeCodeStartOffset, typeCodeBytes)) {
+            if (!plan.matchesServiceUuid) {
+                if (plan.hasTypeCode) {
+                    if (byteArraysMatch(bytesToProcess, startByte + plan.typeCodeStartOffset, plan.typeCodeBytes)) {
+                        patternFound = true;
+                    }
+                }
+            } else {
+                if (byteArraysMatch(bytesToProcess, startByte + plan.serviceUuidStartOffset, plan.serviceUuidBytes)) {
+                    if (plan.hasTypeCode) {
+                        if (byteArraysMatch(bytesToProcess, startByte + plan.typeCodeStartOffset, plan.typeCodeBytes)) {
                             patternFound = true;
                         }
-                    }
-                } else {
-                    if (serviceUuidBytes != null && byteArraysMatch(bytesToProcess, startByte + mServiceUuidStartOffset, serviceUuidBytes)) {
-                        if (mMatchingBeaconTypeCodeEndOffset != null) {
-                            if (byteArraysMatch(bytesToProcess, startByte + mMatchingBeaconTypeCodeStartOffset, typeCodeBytes)) {
-                                patternFound = true;
-                            }
-                        } else {
-                            if (pduToParse.getType() == Pdu.GATT_SERVICE_UUID_PDU_TYPE) {
-                                patternFound = true;
-                            }
+                    } else {
+                        if (pduType == Pdu.GATT_SERVICE_UUID_PDU_TYPE) {
+                            patternFound = true;
                         }
-
                     }
+
                 }
+            }
 
-                if (patternFound == false) {
-                    // This is not a beacon
-                    if (getServiceUuid() == null) {
-                        if (LogManager.isVerboseLoggingEnabled()) {
-                            LogManager.d(TAG, "This is not a matching Beacon advertisement. (Was expecting %s.  "
-                                            + "The bytes I see are: %s", byteArrayToString(typeCodeBytes),
-                                    bytesToHex(bytesToProcess));
+            if (LogManager.isVerboseLoggingEnabled()) {
+                logPatternMatch(plan, patternFound, bytesToProcess, startByte);
+            }
 
-                        }
-                    } else {
-                        if (LogManager.isVerboseLoggingEnabled()) {
-                            int offset = 0;
-                            if (mMatchingBeaconTypeCodeStartOffset != null) {
-                                offset = mMatchingBeaconTypeCodeStartOffset;
-                            }
-                            LogManager.d(TAG, "This is not a matching Beacon advertisement. Was expecting %s at offset %d and %s at offset %d.  "
-                                            + "The bytes I see are: %s",
-                                    serviceUuidBytes != null ? byteArrayToString(serviceUuidBytes) : "",
-                                    startByte + mServiceUuidStartOffset,
-                                    byteArrayToString(typeCodeBytes),
-                                    startByte + offset,
-                                    bytesToHex(bytesToProcess));
-                        }
-                    }
-                } else {
+            if (patternFound) {
+                if (bytesToProcess.length <= startByte + plan.layoutSize && plan.allowPduOverflow) {
+                    // If the layout size is bigger than this PDU, and we allow overflow.  Make sure
+                    // the byte buffer is big enough by zero padding the end so we don't try to read
+                    // outside the byte array of the advertisement
                     if (LogManager.isVerboseLoggingEnabled()) {
-                        LogManager.d(TAG, "This is a recognized beacon advertisement -- %s seen",
-                                byteArrayToString(typeCodeBytes));
-                        LogManager.d(TAG, "Bytes are: %s", bytesToHex(bytesToProcess));
+                        LogManager.d(TAG, "Expanding buffer because it is too short to parse: " + bytesToProcess.length + ", needed: " + (startByte + plan.layoutSize));
                     }
+                    bytesToProcess = ensureMaxSize(bytesToProcess, startByte + plan.layoutSize);
+                }
+                if (identifiers == null) {
+                    identifiers = new ArrayList<>(plan.identifierCount);
+                    dataFields = new ArrayList<>(plan.dataCount);
                 }
+                for (int i = 0; i < plan.identifierCount; i++) {
+                    int endIndex = plan.identifierEndOffsets[i] + startByte;
 
-                if (patternFound) {
-                    if (bytesToProcess.length <= startByte + mLayoutSize && mAllowPduOverflow) {
-                        // If the layout size is bigger than this PDU, and we allow overflow.  Make sure
-                        // the byte buffer is big enough by zero padding the end so we don't try to read
-                        // outside the byte array of the advertisement
+                    if (endIndex > pduEndIndex && plan.identifierVariableLengthFlags[i]) {
                         if (LogManager.isVerboseLoggingEnabled()) {
-                            LogManager.d(TAG, "Expanding buffer because it is too short to parse: " + bytesToProcess.length + ", needed: " + (startByte + mLayoutSize));
+                            LogManager.d(TAG, "Need to truncate identifier by " + (endIndex - pduEndIndex));
                         }
-                        bytesToProcess = ensureMaxSize(bytesToProcess, startByte + mLayoutSize);
-                    }
-                    for (int i = 0; i < mIdentifierEndOffsets.size(); i++) {
-                        int endIndex = mIdentifierEndOffsets.get(i) + startByte;
-
-                        if (endIndex > pduToParse.getEndIndex() && mIdentifierVariableLengthFlags.get(i)) {
-                            if (LogManager.isVerboseLoggingEnabled()) {
-                                LogManager.d(TAG, "Need to truncate identifier by " + (endIndex - pduToParse.getEndIndex()));
-                            }
-                            // If this is a variable length identifier, we truncate it to the size that
-                            // is available in the packet
-                            int start = mIdentifierStartOffsets.get(i) + startByte;
-                            int end = pduToParse.getEndIndex() + 1;
-                            if (end <= start) {
-                                LogManager.d(TAG, "PDU is too short for identifer.  Packet is malformed");
-                                return null;
-                            }
-                            Identifier identifier = Identifier.fromBytes(bytesToProcess, start, end, mIdentifierLittleEndianFlags.get(i));
-                            identifiers.add(identifier);
-                        } else if (endIndex > pduToParse.getEndIndex() && !mAllowPduOverflow) {
-                            parseFailed = true;
-                            if (LogManager.isVerboseLoggingEnabled()) {
-                                LogManager.d(TAG, "Cannot parse identifier " + i + " because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduToParse.getEndIndex());
-                            }
-                        } else {
-                            Identifier identifier = Identifier.fromBytes(bytesToProcess, mIdentifierStartOffsets.get(i) + startByte, endIndex + 1, mIdentifierLittleEndianFlags.get(i));
-                            identifiers.add(identifier);
+                        // If this is a variable length identifier, we truncate it to the size that
+                        // is available in the packet
+                        int start = plan.identifierStartOffsets[i] + startByte;
+                        int end = pduEndIndex + 1;
+                        if (end <= start) {
+                            LogManager.d(TAG, "PDU is too short for identifer.  Packet is malformed");
+                            return null;
                         }
+                        Identifier identifier = Identifier.fromBytes(bytesToProcess, start, end, plan.identifierLittleEndianFlags[i]);
+                        identifiers.add(identifier);
+                    } else if (endIndex > pduEndIndex && !plan.allowPduOverflow) {
+                        parseFailed = true;
+                        if (LogManager.isVerboseLoggingEnabled()) {
+                            LogManager.d(TAG, "Cannot parse identifier " + i + " because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduEndIndex);
+                        }
+                    } else {
+                        Identifier identifier = Identifier.fromBytes(bytesToProcess, plan.identifierStartOffsets[i] + startByte, endIndex + 1, plan.identifierLittleEndianFlags[i]);
+                        identifiers.add(identifier);
                     }
-                    for (int i = 0; i < mDataEndOffsets.size(); i++) {
-                        int endIndex = mDataEndOffsets.get(i) + startByte;
-                        if (endIndex > pduToParse.getEndIndex() && !mAllowPduOverflow) {
-                            if (LogManager.isVerboseLoggingEnabled()) {
-                                LogManager.d(TAG, "Cannot parse data field " + i + " because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduToParse.getEndIndex() + ".  Setting value to 0");
-                            }
-                            dataFields.add(0L);
-                        } else {
-                            String dataString = byteArrayToFormattedString(bytesToProcess, mDataStartOffsets.get(i) + startByte, endIndex, mDataLittleEndianFlags.get(i));
-                            dataFields.add(Long.decode(dataString));
+                }
+                for (int i = 0; i < plan.dataCount; i++) {
+                    int endIndex = plan.dataEndOffsets[i] + startByte;
+                    if (endIndex > pduEndIndex && !plan.allowPduOverflow) {
+                        if (LogManager.isVerboseLoggingEnabled()) {
+                            LogManager.d(TAG, "Cannot parse data field " + i + " because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduEndIndex + ".  Setting value to 0");
                         }
+                        dataFields.add(0L);
+                    } else {
+                        dataFields.add(decodeDataField(bytesToProcess, plan.dataStartOffsets[i] + startByte, endIndex, plan.dataLittleEndianFlags[i]));
                     }
+                }
 
-                    if (mPowerStartOffset != null) {
-                        int endIndex = mPowerEndOffset + startByte;
-                        try {
-                            if (endIndex > pduToParse.getEndIndex() && !mAllowPduOverflow) {
-                                parseFailed = true;
-                                if (LogManager.isVerboseLoggingEnabled()) {
-                                    LogManager.d(TAG, "Cannot parse power field because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduToParse.getEndIndex());
-                                }
-                            } else {
-                                String powerString = byteArrayToFormattedString(bytesToProcess, mPowerStartOffset + startByte, mPowerEndOffset + startByte, false);
-                                txPower = Integer.parseInt(powerString) + mDBmCorrection;
-                                // make sure it is a signed integer
-                                if (txPower > 127) {
-                                    txPower -= 256;
-                                }
-                            }
-                        } catch (NumberFormatException | NullPointerException e1) {
-                            // keep default value
+                if (plan.hasPowerField) {
+                    int endIndex = plan.powerEndOffset + startByte;
+                    if (endIndex > pduEndIndex && !plan.allowPduOverflow) {
+                        parseFailed = true;
+                        if (LogManager.isVerboseLoggingEnabled()) {
+                            LogManager.d(TAG, "Cannot parse power field because PDU is too short.  endIndex: " + endIndex + " PDU endIndex: " + pduEndIndex);
                         }
-                    } else {
-                        if (mDBmCorrection != null) {
-                            txPower = mDBmCorrection;
+                    } else if (plan.hasPowerCorrection && plan.powerEndOffset - plan.powerStartOffset < 4) {
+                        // Power fields that do not fit in an int keep the default value
+                        long power = ByteUtils.readUnsigned(bytesToProcess, plan.powerStartOffset + startByte, endIndex, false);
+                        if (power <= Integer.MAX_VALUE) {
+                            txPower = (int) power + plan.powerCorrection;
+                            // make sure it is a signed integer
+                            if (txPower > 127) {
+                                txPower -= 256;
+                            }
                         }
                     }
-                    if (!parseFailed) {
-                        parseSucceeded = true;
-                        // exit processing PDUs on the first beacon we find.  Only one beacon per advertisement!
-                        break;
+                } else {
+                    if (plan.hasPowerCorrection) {
+                        txPower = plan.powerCorrection;
                     }
                 }
+                if (!parseFailed) {
+                    parseSucceeded = true;
+                    // exit processing PDUs on the first beacon we find.  Only one beacon per advertisement!
+                    break;
+                }
+            }
+        }
+        if (pdusToParseCount == 0) {
+            if (LogManager.isVerboseLoggingEnabled()) {
+                LogManager.d(TAG, "No PDUs to process in this packet.");
             }
         }
 
         if (parseSucceeded) {
             int beaconTypeCode = -1;
-            if (mMatchingBeaconTypeCodeEndOffset != null) {
-                String beaconTypeString = byteArrayToFormattedString(bytesToProcess, mMatchingBeaconTypeCodeStartOffset + startByte, mMatchingBeaconTypeCodeEndOffset + startByte, false);
-                beaconTypeCode = Integer.parseInt(beaconTypeString);
+            if (plan.hasTypeCode) {
+                beaconTypeCode = decodeTypeCode(bytesToProcess, plan.typeCodeStartOffset + startByte, plan.typeCodeEndOffset + startByte);
             }
 
-            int manufacturer = 0;
-            String manufacturerString = byteArrayToFormattedString(bytesToProcess, startByte, startByte + 1, true);
-            manufacturer = Integer.parseInt(manufacturerString);
+            int manufacturer = (int) ByteUtils.readUnsigned(bytesToProcess, startByte, startByte + 1, true);
 
             String macAddress = null;
             String name = null;
@@ -668,11 +676,7 @@ public class BeaconParser implements Serializable {
             beacon.mDataFields = dataFields;
             beacon.mRssi = rssi;
             beacon.mBeaconTypeCode = beaconTypeCode;
-            if (mServiceUuid != null) {
-                beacon.mServiceUuid = (int) mServiceUuid.longValue();
-            } else {
-                beacon.mServiceUuid = -1;
-            }
+            beacon.mServiceUuid = plan.beaconServiceUuid;
 
             beacon.mBluetoothAddress = macAddress;
             beacon.mBluetoothName = name;
@@ -688,6 +692,28 @@ public class BeaconParser implements Serializable {
         }
     }
 
+    private void logPatternMatch(@NonNull BeaconLayoutPlan plan, boolean patternFound, @NonNull byte[] bytesToProcess, int startByte) {
+        if (patternFound) {
+            LogManager.d(TAG, "This is a recognized beacon advertisement -- %s seen",
+                    byteArrayToString(plan.typeCodeBytes));
+            LogManager.d(TAG, "Bytes are: %s", bytesToHex(bytesToProcess));
+        } else if (mServiceUuid == null) {
+            // This is not a beacon
+            LogManager.d(TAG, "This is not a matching Beacon advertisement. (Was expecting %s.  "
+                            + "The bytes I see are: %s", byteArrayToString(plan.typeCodeBytes),
+                    bytesToHex(bytesToProcess));
+        } else {
+            int offset = plan.hasTypeCode ? plan.typeCodeStartOffset : 0;
+            LogManager.d(TAG, "This is not a matching Beacon advertisement. Was expecting %s at offset %d and %s at offset %d.  "
+                            + "The bytes I see are: %s",
+                    plan.serviceUuidBytes != null ? byteArrayToString(plan.serviceUuidBytes) : "",
+                    startByte + plan.serviceUuidStartOffset,
+                    byteArrayToString(plan.typeCodeBytes),
+                    startByte + offset,
+                    bytesToHex(bytesToProcess));
+        }
+    }
+
     /**
      * Get BLE advertisement bytes for a Beacon
      *
@@ -804,6 +830,7 @@ public class BeaconParser implements Serializable {
     @Nullable
     public BeaconParser setMatchingBeaconTypeCode(@Nullable Long typeCode) {
         mMatchingBeaconTypeCode = typeCode;
+        mLayoutPlan = null;
         return this;
     }
 
@@ -847,6 +874,19 @@ public class BeaconParser implements Serializable {
         return mDBmCorrection;
     }
 
+    /**
+     * Returns the compiled form of the current layout, compiling it if needed.
+     */
+    @NonNull
+    BeaconLayoutPlan getLayoutPlan() {
+        BeaconLayoutPlan plan = mLayoutPlan;
+        if (plan == null) {
+            plan = BeaconLayoutPlan.compile(this);
+            mLayoutPlan = plan;
+        }
+        return plan;
+    }
+
     protected static @NonNull String bytesToHex(@NonNull byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
         int v;
@@ -929,50 +969,53 @@ public class BeaconParser implements Serializable {
         return sb.toString().trim();
     }
 
-    private String byteArrayToFormattedString(byte[] byteBuffer, int startIndex, int endIndex, boolean littleEndian) {
-        byte[] bytes = new byte[endIndex - startIndex + 1];
-        if (littleEndian) {
-            for (int i = 0; i <= endIndex - startIndex; i++) {
-                bytes[i] = byteBuffer[startIndex + bytes.length - 1 - i];
+    /**
+     * Decodes a data field into the unsigned value it holds.  Fields of more than eight bytes are
+     * accepted as long as the value fits in a positive long, and sixteen byte fields are never
+     * accepted, as they are UUIDs.
+     *
+     * @throws NumberFormatException if the value of the field cannot be held in a long
+     */
+    private static long decodeDataField(byte[] bytes, int startIndex, int endIndex, boolean littleEndian) {
+        int length = endIndex - startIndex + 1;
+        if (length == 16) {
+            throw new NumberFormatException("Cannot decode a 16 byte data field");
+        }
+        if (length > 8) {
+            // The bytes beyond the eight least significant ones must all be zero
+            int leadingStart = littleEndian ? startIndex + 8 : startIndex;
+            for (int i = leadingStart; i < leadingStart + length - 8; i++) {
+                if (bytes[i] != 0) {
+                    throw new NumberFormatException("Data field value is too large for a long");
+                }
             }
-        } else {
-            for (int i = 0; i <= endIndex - startIndex; i++) {
-                bytes[i] = byteBuffer[startIndex + i];
+            if (littleEndian) {
+                endIndex = startIndex + 7;
+            } else {
+                startIndex = endIndex - 7;
             }
         }
-
-
-        int length = endIndex - startIndex + 1;
-        // We treat a 1-4 byte number as decimal string
-        if (length < 5) {
-            long number = 0l;
-            for (int i = 0; i < bytes.length; i++) {
-                long byteValue = (long) (bytes[bytes.length - i - 1] & 0xff);
-                long positionValue = (long) Math.pow(256.0, i * 1.0);
-                long calculatedValue = (byteValue * positionValue);
-                number += calculatedValue;
-            }
-            return Long.toString(number);
+        long value = ByteUtils.readUnsigned(bytes, startIndex, endIndex, littleEndian);
+        if (value < 0) {
+            throw new NumberFormatException("Data field value is too large for a long");
         }
+        return value;
+    }
 
-        // We treat a 7+ byte number as a hex string
-        String hexString = bytesToHex(bytes);
-
-        // And if it is a 12 byte number we add dashes to it to make it look like a standard UUID
-        if (bytes.length == 16) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(hexString.substring(0, 8));
-            sb.append("-");
-            sb.append(hexString.substring(8, 12));
-            sb.append("-");
-            sb.append(hexString.substring(12, 16));
-            sb.append("-");
-            sb.append(hexString.substring(16, 20));
-            sb.append("-");
-            sb.append(hexString.substring(20, 32));
-            return sb.toString();
+    /**
+     * Decodes the big endian beacon type code of a matched advertisement.
+     *
+     * @throws NumberFormatException if the type code does not fit in a positive int
+     */
+    private static int decodeTypeCode(byte[] bytes, int startIndex, int endIndex) {
+        if (endIndex - startIndex >= 4) {
+            throw new NumberFormatException("Beacon type code is too large for an int");
+        }
+        long value = ByteUtils.readUnsigned(bytes, startIndex, endIndex, false);
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Beacon type code is too large for an int");
         }
-        return "0x" + hexString;
+        return (int) value;
     }
 
     private byte[] ensureMaxSize(byte[] array, int requiredLength) {
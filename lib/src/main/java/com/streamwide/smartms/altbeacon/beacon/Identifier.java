@@ -18,9 +18,15 @@ package com.streamwide.smartms.altbeacon.beacon;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.streamwide.smartms.altbeacon.beacon.utils.ByteUtils;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Locale;
 import java.util.UUID;
@@ -41,8 +47,23 @@ public class Identifier implements Comparable<Identifier>, Serializable {
     // BUG: Dashes in UUIDs are not optional!
     private static final Pattern UUID_PATTERN = Pattern.compile("^[0-9A-Fa-f]{8}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{4}-?[0-9A-Fa-f]{12}$");
     private static final int MAX_INTEGER = 65535;
-
+    private static final int MAX_PACKED_LENGTH = 8;
+    private static final int UUID_LENGTH = 16;
+
+    private static final long serialVersionUID = 5461660956330210916L;
+    // Identifiers are serialized as the byte array they used to be backed by
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("mValue", byte[].class)
+    };
+
+    // Values of up to 8 bytes are held in mLeastSignificant and 16 byte values in both longs,
+    // big endian.  mValue only holds values of other lengths, and is null otherwise.
+    private final int mLength;
+    private final long mMostSignificant;
+    private final long mLeastSignificant;
+    @Nullable
     private final byte[] mValue;
+    private final int mHashCode;
 
     /**
      * Takes the passed string and tries to figure out what format it is in.
@@ -133,7 +154,7 @@ public class Identifier implements Comparable<Identifier>, Serializable {
         for (int i = 0; i < result.length; i++) {
             result[i] = (byte) (Integer.parseInt(str.substring(i * 2, i * 2 + 2), 16) & 0xFF);
         }
-        return new Identifier(result);
+        return fromValue(result);
     }
 
     /**
@@ -153,7 +174,7 @@ public class Identifier implements Comparable<Identifier>, Serializable {
             newValue[i] = (byte) (longValue & 0xff);
             longValue = longValue >> 8;
         }
-        return new Identifier(newValue);
+        return fromValue(newValue);
     }
 
     /**
@@ -173,7 +194,7 @@ public class Identifier implements Comparable<Identifier>, Serializable {
         newValue[0] = (byte) (intValue >> 8);
         newValue[1] = (byte) (intValue);
 
-        return new Identifier(newValue);
+        return fromValue(newValue);
     }
 
     /**
@@ -203,11 +224,11 @@ public class Identifier implements Comparable<Identifier>, Serializable {
             throw new IllegalArgumentException("start > end");
         }
 
-        byte[] byteRange = Arrays.copyOfRange(bytes, start, end);
-        if (littleEndian) {
-            reverseArray(byteRange);
+        IdentifierPool pool = IdentifierPool.getInstance();
+        if (pool.isEnabled()) {
+            return pool.intern(bytes, start, end, littleEndian);
         }
-        return new Identifier(byteRange);
+        return create(bytes, start, end, littleEndian);
     }
 
     /**
@@ -220,7 +241,40 @@ public class Identifier implements Comparable<Identifier>, Serializable {
         ByteBuffer buf = ByteBuffer.allocate(16);
         buf.putLong(uuid.getMostSignificantBits());
         buf.putLong(uuid.getLeastSignificantBits());
-        return new Identifier(buf.array());
+        return fromValue(buf.array());
+    }
+
+    /**
+     * Returns the pooled identifier for a value when the {@link IdentifierPool} is enabled, or a
+     * new identifier otherwise.
+     */
+    private static Identifier fromValue(byte[] value) {
+        IdentifierPool pool = IdentifierPool.getInstance();
+        if (pool.isEnabled()) {
+            return pool.intern(value, 0, value.length, false);
+        }
+        return new Identifier(value);
+    }
+
+    /**
+     * Creates a new Identifier from a range of bytes, bypassing the {@link IdentifierPool}.
+     */
+    static Identifier create(byte[] bytes, int start, int end, boolean littleEndian) {
+        int length = end - start;
+        if (length <= MAX_PACKED_LENGTH) {
+            return new Identifier(length, 0L, ByteUtils.readUnsigned(bytes, start, end - 1, littleEndian), null);
+        }
+        if (length == UUID_LENGTH) {
+            int middle = start + UUID_LENGTH / 2;
+            long first = ByteUtils.readUnsigned(bytes, start, middle - 1, littleEndian);
+            long second = ByteUtils.readUnsigned(bytes, middle, end - 1, littleEndian);
+            return littleEndian ? new Identifier(length, second, first, null) : new Identifier(length, first, second, null);
+        }
+        byte[] byteRange = Arrays.copyOfRange(bytes, start, end);
+        if (littleEndian) {
+            reverseArray(byteRange);
+        }
+        return new Identifier(length, 0L, 0L, byteRange);
     }
 
     /**
@@ -235,7 +289,11 @@ public class Identifier implements Comparable<Identifier>, Serializable {
         if (identifier == null) {
             throw new NullPointerException("Identifiers cannot be constructed from null pointers but \"identifier\" is null.");
         }
+        mLength = identifier.mLength;
+        mMostSignificant = identifier.mMostSignificant;
+        mLeastSignificant = identifier.mLeastSignificant;
         mValue = identifier.mValue;
+        mHashCode = identifier.mHashCode;
     }
 
     /**
@@ -244,10 +302,67 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      * @param value value to use. This value isn't copied, so don't change the value after using it to create an instance!
      */
     protected Identifier(@Nullable byte[] value) {
+        this(checkNotNull(value).length, packedMostSignificant(value), packedLeastSignificant(value),
+                isPackedLength(value.length) ? null : value.clone());
+    }
+
+    private Identifier(int length, long mostSignificant, long leastSignificant, @Nullable byte[] value) {
+        mLength = length;
+        mMostSignificant = mostSignificant;
+        mLeastSignificant = leastSignificant;
+        mValue = value;
+        if (value != null) {
+            mHashCode = Arrays.hashCode(value);
+        } else {
+            long hash = mostSignificant * 31 + leastSignificant;
+            mHashCode = 31 * (int) (hash ^ (hash >>> 32)) + length;
+        }
+    }
+
+    private static byte[] checkNotNull(@Nullable byte[] value) {
         if (value == null) {
             throw new NullPointerException("Identifiers cannot be constructed from null pointers but \"value\" is null.");
         }
-        this.mValue = value.clone();
+        return value;
+    }
+
+    private static boolean isPackedLength(int length) {
+        return length <= MAX_PACKED_LENGTH || length == UUID_LENGTH;
+    }
+
+    private static long packedMostSignificant(byte[] value) {
+        return value.length == UUID_LENGTH ? ByteUtils.readUnsigned(value, 0, 7, false) : 0L;
+    }
+
+    private static long packedLeastSignificant(byte[] value) {
+        if (value.length <= MAX_PACKED_LENGTH) {
+            return ByteUtils.readUnsigned(value, 0, value.length - 1, false);
+        }
+        return value.length == UUID_LENGTH ? ByteUtils.readUnsigned(value, 8, 15, false) : 0L;
+    }
+
+    /**
+     * Returns the byte at the specified index of the big endian value.
+     */
+    private int byteAt(int index) {
+        if (mValue != null) {
+            return mValue[index];
+        }
+        if (mLength == UUID_LENGTH && index < UUID_LENGTH / 2) {
+            return (byte) (mMostSignificant >>> ((UUID_LENGTH / 2 - 1 - index) * 8));
+        }
+        return (byte) (mLeastSignificant >>> ((mLength - 1 - index) * 8));
+    }
+
+    private byte[] toBytes() {
+        if (mValue != null) {
+            return mValue.clone();
+        }
+        byte[] bytes = new byte[mLength];
+        for (int i = 0; i < mLength; i++) {
+            bytes[i] = (byte) byteAt(i);
+        }
+        return bytes;
     }
 
     /**
@@ -262,10 +377,10 @@ public class Identifier implements Comparable<Identifier>, Serializable {
     public String toString() {
         // Note:  the toString() method is also used for serialization and deserialization.  So
         // toString() and parse() must always return objects that return true when you call equals()
-        if (mValue.length == 2) {
+        if (mLength == 2) {
             return Integer.toString(toInt());
         }
-        if (mValue.length == 16) {
+        if (mLength == UUID_LENGTH) {
             return toUuid().toString();
         }
         return toHexString();
@@ -278,16 +393,10 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      * @throws UnsupportedOperationException when value length is longer than 2
      */
     public int toInt() {
-        if (mValue.length > 2) {
+        if (mLength > 2) {
             throw new UnsupportedOperationException("Only supported for Identifiers with max byte length of 2");
         }
-        int result = 0;
-
-        for (int i = 0; i < mValue.length; i++) {
-            result |= (mValue[i] & 0xFF) << ((mValue.length - i - 1) * 8);
-        }
-
-        return result;
+        return (int) mLeastSignificant;
     }
 
     /**
@@ -298,7 +407,7 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      */
     @NonNull
     public byte[] toByteArrayOfSpecifiedEndianness(boolean bigEndian) {
-        byte[] copy = Arrays.copyOf(mValue, mValue.length);
+        byte[] copy = toBytes();
 
         if (!bigEndian) {
             reverseArray(copy);
@@ -322,12 +431,32 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      * @return length of identifier
      */
     public int getByteCount() {
-        return mValue.length;
+        return mLength;
+    }
+
+    /**
+     * Returns whether the value of this identifier is made of the given range of bytes.
+     *
+     * @param bytes        array holding the value
+     * @param start        the start index, inclusive
+     * @param end          the end index, exclusive
+     * @param littleEndian whether the bytes are ordered in little endian
+     */
+    boolean valueEquals(byte[] bytes, int start, int end, boolean littleEndian) {
+        if (end - start != mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            if (byteAt(i) != bytes[littleEndian ? end - 1 - i : start + i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(mValue);
+        return mHashCode;
     }
 
     /**
@@ -346,7 +475,10 @@ public class Identifier implements Comparable<Identifier>, Serializable {
             return false;
         }
         Identifier thatIdentifier = (Identifier) that;
-        return Arrays.equals(mValue, thatIdentifier.mValue);
+        return mLeastSignificant == thatIdentifier.mLeastSignificant
+                && mMostSignificant == thatIdentifier.mMostSignificant
+                && mLength == thatIdentifier.mLength
+                && (mValue == null || Arrays.equals(mValue, thatIdentifier.mValue));
     }
 
     private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
@@ -358,13 +490,14 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      */
     @NonNull
     public String toHexString() {
-        final int l = mValue.length;
+        final int l = mLength;
         final char[] out = new char[l * 2 + 2];
         out[0] = '0';
         out[1] = 'x';
         for (int i = 0, j = 2; i < l; i++) {
-            out[j++] = HEX_DIGITS[(0xF0 & mValue[i]) >>> 4];
-            out[j++] = HEX_DIGITS[0x0F & mValue[i]];
+            int b = byteAt(i);
+            out[j++] = HEX_DIGITS[(0xF0 & b) >>> 4];
+            out[j++] = HEX_DIGITS[0x0F & b];
         }
         String s = new String(out);
         return s;
@@ -393,11 +526,10 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      */
     @NonNull
     public UUID toUuid() {
-        if (mValue.length != 16) {
+        if (mLength != UUID_LENGTH) {
             throw new UnsupportedOperationException("Only Identifiers backed by a byte array with length of exactly 16 can be UUIDs.");
         }
-        LongBuffer buf = ByteBuffer.wrap(mValue).asLongBuffer();
-        return new UUID(buf.get(), buf.get());
+        return new UUID(mMostSignificant, mLeastSignificant);
     }
 
     /**
@@ -408,7 +540,7 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      */
     @NonNull
     public byte[] toByteArray() {
-        return mValue.clone();
+        return toBytes();
     }
 
     /**
@@ -423,14 +555,43 @@ public class Identifier implements Comparable<Identifier>, Serializable {
      */
     @Override
     public int compareTo(@NonNull Identifier that) {
-        if (mValue.length != that.mValue.length) {
-            return mValue.length < that.mValue.length ? -1 : 1;
+        if (mLength != that.mLength) {
+            return mLength < that.mLength ? -1 : 1;
+        }
+        if (mValue == null) {
+            // Bytes compare as signed values, so flip the sign bit of each before comparing
+            int result = compareSignedBytes(mMostSignificant, that.mMostSignificant, UUID_LENGTH / 2);
+            return result != 0 ? result : compareSignedBytes(mLeastSignificant, that.mLeastSignificant, Math.min(mLength, MAX_PACKED_LENGTH));
         }
-        for (int i = 0; i < mValue.length; i++) {
+        for (int i = 0; i < mLength; i++) {
             if (mValue[i] != that.mValue[i]) {
                 return mValue[i] < that.mValue[i] ? -1 : 1;
             }
         }
         return 0;
     }
+
+    private static int compareSignedBytes(long value, long thatValue, int length) {
+        if (value == thatValue) {
+            return 0;
+        }
+        long signBits = 0x8080808080808080L >>> ((MAX_PACKED_LENGTH - length) * 8);
+        long flipped = (value ^ signBits) + Long.MIN_VALUE;
+        long thatFlipped = (thatValue ^ signBits) + Long.MIN_VALUE;
+        return flipped < thatFlipped ? -1 : 1;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("mValue", toBytes());
+        out.writeFields();
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        // Only mValue is read from the stream, rebuild the packed form from it
+        if (mValue == null) {
+            throw new InvalidObjectException("Identifier has no value");
+        }
+        return new Identifier(mValue);
+    }
 }
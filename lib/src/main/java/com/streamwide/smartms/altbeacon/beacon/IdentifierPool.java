@@ -0,0 +1,296 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Optional, bounded pool of canonical {@link Identifier} instances.  When enabled, the Identifier
+ * factory methods return the pooled instance for any value already seen instead of allocating a
+ * new one, so that the identifiers of beacons advertising many times per second are only created
+ * once.  The least recently used values are evicted once the pool is full.
+ * <p>
+ * Values are spread by hash over independently locked segments, each holding an equal share of
+ * the maximum size, so that threads parsing different identifiers rarely contend.  Pools smaller
+ * than {@value #SEGMENT_COUNT} use fewer segments, so that each holds at least one value.  Values
+ * are evicted from the least recently used of their segment.
+ * <p>
+ * The pool is disabled by default.  Enable it with {@link #setMaxSize(int)}.
+ */
+public class IdentifierPool {
+    private static final IdentifierPool INSTANCE = new IdentifierPool();
+    // Must be a power of two
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+
+    private int mMaxSize = 0;
+    // Segments in use, a power of two
+    private volatile int mSegmentCount = SEGMENT_COUNT;
+    @NonNull
+    private final Segment[] mSegments = new Segment[SEGMENT_COUNT];
+
+    private IdentifierPool() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            mSegments[i] = new Segment();
+        }
+    }
+
+    @NonNull
+    public static IdentifierPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the maximum number of identifiers kept in the pool.  Setting it to zero disables the
+     * pool and releases all pooled identifiers.
+     *
+     * @param maxSize the maximum number of pooled identifiers
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Pool size must be >= 0.");
+        }
+        mMaxSize = maxSize;
+        int segmentCount = Math.max(1, Math.min(SEGMENT_COUNT, Integer.highestOneBit(maxSize)));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            mSegments[i].setMaxSize(i >= segmentCount ? 0
+                    : maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+        mSegmentCount = segmentCount;
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of identifiers currently pooled
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : mSegments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of lookups answered with a pooled identifier
+     */
+    public long getHitCount() {
+        long hitCount = 0;
+        for (Segment segment : mSegments) {
+            hitCount += segment.getHitCount();
+        }
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that had to create a new identifier, whether it was then
+     * pooled or not
+     */
+    public long getMissCount() {
+        long missCount = 0;
+        for (Segment segment : mSegments) {
+            missCount += segment.getMissCount();
+        }
+        return missCount;
+    }
+
+    /**
+     * Releases all pooled identifiers and sets the hit and miss counters back to zero
+     */
+    public void clear() {
+        for (Segment segment : mSegments) {
+            segment.clear();
+        }
+    }
+
+    boolean isEnabled() {
+        // Read without locking: a stale value only means one lookup bypasses or uses the pool
+        return mMaxSize > 0;
+    }
+
+    /**
+     * Returns the canonical identifier for a range of bytes, creating and pooling it if needed.
+     *
+     * @param bytes        array holding the value
+     * @param start        the start index, inclusive
+     * @param end          the end index, exclusive
+     * @param littleEndian whether the bytes are ordered in little endian
+     */
+    @NonNull
+    Identifier intern(@NonNull byte[] bytes, int start, int end, boolean littleEndian) {
+        int hash = hash(bytes, start, end, littleEndian);
+        // Buckets of a segment are indexed by the low bits of the hash, segments by the high ones
+        int segment = ((hash ^ (hash << 16)) >>> SEGMENT_SHIFT) & (mSegmentCount - 1);
+        return mSegments[segment].intern(bytes, start, end, littleEndian, hash);
+    }
+
+    /**
+     * Same value as {@link java.util.Arrays#hashCode(byte[])} over the bytes in identifier order
+     */
+    private static int hash(byte[] bytes, int start, int end, boolean littleEndian) {
+        int hash = 1;
+        if (littleEndian) {
+            for (int i = end - 1; i >= start; i--) {
+                hash = 31 * hash + bytes[i];
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Least recently used pool of the identifiers of one range of hashes
+     */
+    private static final class Segment {
+        private int mMaxSize = 0;
+        private int mSize = 0;
+        @NonNull
+        private Entry[] mTable = new Entry[0];
+        // Sentinel of the circular list of entries, from least to most recently used
+        @NonNull
+        private final Entry mLru = new Entry(null, 0);
+        private long mHitCount = 0;
+        private long mMissCount = 0;
+
+        Segment() {
+            mLru.before = mLru;
+            mLru.after = mLru;
+        }
+
+        synchronized void setMaxSize(int maxSize) {
+            mMaxSize = maxSize;
+            while (mSize > maxSize) {
+                remove(mLru.after);
+            }
+            rehash(maxSize);
+        }
+
+        synchronized int size() {
+            return mSize;
+        }
+
+        synchronized long getHitCount() {
+            return mHitCount;
+        }
+
+        synchronized long getMissCount() {
+            return mMissCount;
+        }
+
+        synchronized void clear() {
+            mTable = new Entry[mTable.length];
+            mLru.before = mLru;
+            mLru.after = mLru;
+            mSize = 0;
+            mHitCount = 0;
+            mMissCount = 0;
+        }
+
+        @NonNull
+        synchronized Identifier intern(@NonNull byte[] bytes, int start, int end, boolean littleEndian, int hash) {
+            if (mMaxSize == 0) {
+                // Only reached by a lookup racing a change of the pool size
+                mMissCount++;
+                return Identifier.create(bytes, start, end, littleEndian);
+            }
+            int bucket = hash & (mTable.length - 1);
+            for (Entry entry = mTable[bucket]; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.identifier.valueEquals(bytes, start, end, littleEndian)) {
+                    mHitCount++;
+                    // move to the most recently used end
+                    unlink(entry);
+                    linkLast(entry);
+                    return entry.identifier;
+                }
+            }
+            mMissCount++;
+            if (mSize == mMaxSize) {
+                remove(mLru.after);
+            }
+            Entry entry = new Entry(Identifier.create(bytes, start, end, littleEndian), hash);
+            entry.next = mTable[bucket];
+            mTable[bucket] = entry;
+            linkLast(entry);
+            mSize++;
+            return entry.identifier;
+        }
+
+        private void remove(Entry entry) {
+            int bucket = entry.hash & (mTable.length - 1);
+            Entry previous = null;
+            for (Entry candidate = mTable[bucket]; candidate != null; candidate = candidate.next) {
+                if (candidate == entry) {
+                    if (previous == null) {
+                        mTable[bucket] = entry.next;
+                    } else {
+                        previous.next = entry.next;
+                    }
+                    break;
+                }
+                previous = candidate;
+            }
+            unlink(entry);
+            mSize--;
+        }
+
+        private void rehash(int maxSize) {
+            // Load factor of at most 0.75, computed in long as maxSize * 4 overflows an int
+            int capacity = 1;
+            while ((long) capacity * 3 < (long) maxSize * 4) {
+                capacity <<= 1;
+            }
+            Entry[] table = new Entry[maxSize == 0 ? 0 : capacity];
+            for (Entry entry = mLru.after; entry != mLru; entry = entry.after) {
+                int bucket = entry.hash & (table.length - 1);
+                entry.next = table[bucket];
+                table[bucket] = entry;
+            }
+            mTable = table;
+        }
+
+        private void unlink(Entry entry) {
+            entry.before.after = entry.after;
+            entry.after.before = entry.before;
+        }
+
+        private void linkLast(Entry entry) {
+            entry.before = mLru.before;
+            entry.after = mLru;
+            mLru.before.after = entry;
+            mLru.before = entry;
+        }
+    }
+
+    private static final class Entry {
+        final Identifier identifier;
+        final int hash;
+        Entry next;
+        Entry before;
+        Entry after;
+
+        Entry(Identifier identifier, int hash) {
+            this.identifier = identifier;
+            this.hash = hash;
+        }
+    }
+}
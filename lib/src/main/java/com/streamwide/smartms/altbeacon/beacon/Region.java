@@ -43,6 +43,8 @@ import java.util.regex.Pattern;
  */
 public class Region implements Parcelable, Serializable {
     private static final String TAG = "Region";
+    // Computed value of the original class, so that persisted regions can still be read
+    private static final long serialVersionUID = -4768871137716919268L;
     private static final Pattern MAC_PATTERN = Pattern.compile("^[0-9A-Fa-f]{2}\\:[0-9A-Fa-f]{2}\\:[0-9A-Fa-f]{2}\\:[0-9A-Fa-f]{2}\\:[0-9A-Fa-f]{2}\\:[0-9A-Fa-f]{2}$");
     /**
      * Required to make class Parcelable
@@ -166,6 +168,13 @@ public class Region implements Parcelable, Serializable {
         return mIdentifiers.size() > i ? mIdentifiers.get(i) : null;
     }
 
+    /**
+     * Returns the number of identifiers of this region, including the null ones
+     */
+    public int getIdentifierCount() {
+        return mIdentifiers.size();
+    }
+
     /**
      * Returns the identifier used to start or stop ranging/monitoring this region when calling
      * the <code>BeaconManager</code> methods.
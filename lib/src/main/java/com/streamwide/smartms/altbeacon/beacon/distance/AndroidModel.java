@@ -108,7 +108,9 @@ public class AndroidModel {
         if (score == 3 && this.mVersion.equals(otherModel.mVersion)) {
             score = 4;
         }
-        LogManager.d(TAG, "Score is %s for %s compared to %s", score, toString(), otherModel);
+        if (LogManager.isVerboseLoggingEnabled()) {
+            LogManager.d(TAG, "Score is %s for %s compared to %s", score, toString(), otherModel);
+        }
         return score;
     }
 
@@ -62,9 +62,6 @@ public class CurveFittedDistanceCalculator implements DistanceCalculator {
             return -1.0; // if we cannot determine accuracy, return -1.
         }
 
-        LogManager.d(TAG, "calculating distance based on mRssi of %s and txPower of %s", rssi, txPower);
-
-
         double ratio = rssi * 1.0 / txPower;
         double distance;
         if (ratio < 1.0) {
@@ -72,7 +69,9 @@ public class CurveFittedDistanceCalculator implements DistanceCalculator {
         } else {
             distance = (mCoefficient1) * Math.pow(ratio, mCoefficient2) + mCoefficient3;
         }
-        LogManager.d(TAG, "avg mRssi: %s distance: %s", rssi, distance);
+        if (LogManager.isVerboseLoggingEnabled()) {
+            LogManager.d(TAG, "calculated distance %s from avg mRssi of %s and txPower of %s", distance, rssi, txPower);
+        }
         return distance;
     }
 }
@@ -17,23 +17,26 @@ package com.streamwide.smartms.altbeacon.beacon.distance;
 
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.streamwide.smartms.altbeacon.R;
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Obtains a <code>DistanceCalculator</code> appropriate for a specific Android model.  Each model
@@ -48,7 +51,13 @@ import java.util.concurrent.locks.ReentrantLock;
  * If no match can be found at all, the device model marked as the default will be used for the
  * calculation.
  * <p>
- * The configuration table is stored in model_distance_calculations.json
+ * The configuration table is stored in model_distance_calculations.json.  It is parsed once per
+ * process and shared by all instances, on a background thread which also finds the matching model
+ * of each instance.  The constructor does not wait for it.  Distances calculated on the main
+ * thread are unknown until the matching model is found, other threads wait for it.
+ * <p>
+ * Distances are calculated from the exact running average RSSI, unless
+ * <code>BeaconManager.setDistanceRssiRounded</code> is set.
  * <p>
  * For information on how to get new Android device models added to this table, please
  * see <a href='http://altbeacon.github.io/android-beacon-library/distance-calculations.html'
@@ -57,14 +66,30 @@ import java.util.concurrent.locks.ReentrantLock;
  * Created by dyoung on 8/28/14.
  */
 public class ModelSpecificDistanceCalculator implements DistanceCalculator {
-    Map<AndroidModel, DistanceCalculator> mModelMap;
+
     private static final String TAG = "ModelSpecificDistanceCalculator";
-    private AndroidModel mDefaultModel;
-    private DistanceCalculator mDistanceCalculator;
-    private AndroidModel mModel;
-    private AndroidModel mRequestedModel;
-    private Context mContext;
-    private final ReentrantLock mLock = new ReentrantLock();
+    private static final Object sModelTableLock = new Object();
+    @Nullable
+    private static ModelTable sModelTable = null;
+    // Finds the matching model of each instance in turn, so that the table is only parsed once
+    private static final ThreadPoolExecutor sSelectionExecutor = new ThreadPoolExecutor(1, 1,
+            1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        sSelectionExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final AndroidModel mRequestedModel;
+    private final Context mContext;
+    private final FutureTask<ModelTable.Entry> mSelection;
+    private volatile long mInitializationNanos = -1;
 
     /**
      * Obtains the best possible <code>DistanceCalculator</code> for the Android device calling
@@ -81,16 +106,25 @@ public class ModelSpecificDistanceCalculator implements DistanceCalculator {
     public ModelSpecificDistanceCalculator(@NonNull Context context, @NonNull AndroidModel model) {
         mRequestedModel = model;
         mContext = context;
-        loadModelMap();
-        mDistanceCalculator = findCalculatorForModelWithLock(model);
+        mSelection = new FutureTask<>(new Callable<ModelTable.Entry>() {
+            @Override
+            public ModelTable.Entry call() {
+                return selectModel();
+            }
+        });
+        sSelectionExecutor.execute(mSelection);
     }
 
     /**
-     * @return the Android device model used for distance calculations
+     * Waits for the model table to be loaded if needed.
+     *
+     * @return the Android device model used for distance calculations, or null if no model
+     * matches and no default model is set
      */
-    @NonNull
+    @Nullable
     public AndroidModel getModel() {
-        return mModel;
+        ModelTable.Entry entry = awaitSelection();
+        return entry == null ? null : entry.model;
     }
 
     /**
@@ -101,125 +135,101 @@ public class ModelSpecificDistanceCalculator implements DistanceCalculator {
         return mRequestedModel;
     }
 
+    /**
+     * Waits for the model table to be loaded if needed.
+     *
+     * @return the time in nanoseconds spent loading the model table and finding the matching model
+     * for this instance, not including the load time if the table was already loaded by another
+     * instance, or -1 if loading failed
+     */
+    public long getInitializationNanos() {
+        awaitSelection();
+        return mInitializationNanos;
+    }
+
+    /**
+     * Waits for the model table to be loaded if needed, unless called on the main thread.
+     *
+     * @return the distance, or -1 if called on the main thread before the matching model is found
+     */
     @Override
     public double calculateDistance(int txPower, double rssi) {
-        if (mDistanceCalculator == null) {
+        if (!mSelection.isDone() && Looper.myLooper() == Looper.getMainLooper()) {
+            LogManager.d(TAG, "distance calculator is not ready yet");
+            return -1.0;
+        }
+        ModelTable.Entry entry = awaitSelection();
+        if (entry == null) {
             LogManager.w(TAG, "distance calculator has not been set");
             return -1.0;
         }
-        return mDistanceCalculator.calculateDistance(txPower, rssi);
+        DistanceCalculator calculator = BeaconManager.isDistanceRssiRounded()
+                ? entry.roundedCalculator() : entry.calculator;
+        return calculator.calculateDistance(txPower, rssi);
     }
 
-    DistanceCalculator findCalculatorForModelWithLock(AndroidModel model) {
-        mLock.lock();
+    @Nullable
+    private ModelTable.Entry awaitSelection() {
         try {
-            return findCalculatorForModel(model);
-        } finally {
-            mLock.unlock();
+            return mSelection.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LogManager.e(e.getCause(), TAG, "Cannot find distance calculator");
+            return null;
         }
     }
 
-    private DistanceCalculator findCalculatorForModel(AndroidModel model) {
-        LogManager.d(TAG, "Finding best distance calculator for %s, %s, %s, %s",
-                model.getVersion(), model.getBuildNumber(), model.getModel(),
-                model.getManufacturer());
-
-        if (mModelMap == null) {
-            LogManager.d(TAG, "Cannot get distance calculator because modelMap was never initialized");
-            return null;
-        }
+    private ModelTable.Entry selectModel() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        ModelTable table = modelTable(mContext);
+        long loaded = SystemClock.elapsedRealtimeNanos();
+        ModelTable.Entry entry = table.find(mRequestedModel);
+        long end = SystemClock.elapsedRealtimeNanos();
+        mInitializationNanos = end - start;
 
-        int highestScore = 0;
-        AndroidModel bestMatchingModel = null;
-        for (AndroidModel candidateModel : mModelMap.keySet()) {
-            if (candidateModel.matchScore(model) > highestScore) {
-                highestScore = candidateModel.matchScore(model);
-                bestMatchingModel = candidateModel;
-            }
-        }
-        if (bestMatchingModel != null) {
-            LogManager.d(TAG, "found a match with score %s", highestScore);
-            LogManager.d(TAG, "Finding best distance calculator for %s, %s, %s, %s",
-                    bestMatchingModel.getVersion(), bestMatchingModel.getBuildNumber(),
-                    bestMatchingModel.getModel(), bestMatchingModel.getManufacturer());
-            mModel = bestMatchingModel;
+        if (entry == null) {
+            LogManager.w(TAG, "Cannot find match for %s and no default model is set", mRequestedModel);
         } else {
-            mModel = mDefaultModel;
-            LogManager.w(TAG, "Cannot find match for this device.  Using default");
+            LogManager.d(TAG, "Using distance calculator of %s for %s", entry.model, mRequestedModel);
         }
-        return mModelMap.get(mModel);
-    }
-
-    private void loadModelMap() {
-        loadDefaultModelMap();
-        mDistanceCalculator = findCalculatorForModelWithLock(mRequestedModel);
+        LogManager.i(TAG, "Model table of %s models ready in %s us, matching model found in %s us",
+                table.size(), (loaded - start) / 1000, (end - loaded) / 1000);
+        return entry;
     }
 
-    private void buildModelMap(String jsonString) throws JSONException {
-        HashMap<AndroidModel, DistanceCalculator> map = new HashMap<AndroidModel, DistanceCalculator>();
-        JSONObject jsonObject = new JSONObject(jsonString);
-        JSONArray array = jsonObject.getJSONArray("models");
-        for (int i = 0; i < array.length(); i++) {
-            JSONObject modelObject = array.getJSONObject(i);
-            boolean defaultFlag = false;
-            if (modelObject.has("default")) {
-                defaultFlag = modelObject.getBoolean("default");
-            }
-            Double coefficient1 = modelObject.getDouble("coefficient1");
-            Double coefficient2 = modelObject.getDouble("coefficient2");
-            Double coefficient3 = modelObject.getDouble("coefficient3");
-            String version = modelObject.getString("version");
-            String buildNumber = modelObject.getString("build_number");
-            String model = modelObject.getString("model");
-            String manufacturer = modelObject.getString("manufacturer");
-
-            CurveFittedDistanceCalculator distanceCalculator =
-                    new CurveFittedDistanceCalculator(coefficient1, coefficient2, coefficient3);
-
-            AndroidModel androidModel = new AndroidModel(version, buildNumber, model, manufacturer);
-
-            map.put(androidModel, distanceCalculator);
-            if (defaultFlag) {
-                mDefaultModel = androidModel;
+    @NonNull
+    private static ModelTable modelTable(@NonNull Context context) {
+        synchronized (sModelTableLock) {
+            if (sModelTable == null) {
+                try {
+                    sModelTable = ModelTable.parse(stringFromFilePath(context));
+                } catch (Exception e) {
+                    sModelTable = ModelTable.empty();
+                    LogManager.e(e, TAG, "Cannot build model distance calculations");
+                }
             }
+            return sModelTable;
         }
-        mModelMap = map;
     }
 
-    private void loadDefaultModelMap() {
-        try {
-            buildModelMap(stringFromFilePath());
-        } catch (Exception e) {
-            mModelMap = new HashMap<AndroidModel, DistanceCalculator>();
-            LogManager.e(e, TAG, "Cannot build model distance calculations");
+    private static String stringFromFilePath(@NonNull Context context) throws IOException {
+        InputStream stream = context.getResources().openRawResource(R.raw.model_distance_calculations);
+        if (stream == null) {
+            throw new RuntimeException("Cannot load resource at raw directory");
         }
-    }
-
-    private String stringFromFilePath() throws IOException {
-        InputStream stream = null;
-        BufferedReader bufferedReader = null;
-        StringBuilder inputStringBuilder = new StringBuilder();
         try {
-            stream = mContext.getResources().openRawResource(R.raw.model_distance_calculations);
-            if (stream == null) {
-                throw new RuntimeException("Cannot load resource at raw directory");
-            }
-            bufferedReader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-            String line = bufferedReader.readLine();
-            while (line != null) {
-                inputStringBuilder.append(line);
-                inputStringBuilder.append('\n');
-                line = bufferedReader.readLine();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(stream.available(), 1024));
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
             }
+            return output.toString("UTF-8");
         } finally {
-            if (bufferedReader != null) {
-                bufferedReader.close();
-            }
-            if (stream != null) {
-                stream.close();
-            }
+            stream.close();
         }
-        return inputStringBuilder.toString();
     }
 
 }
@@ -0,0 +1,160 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.distance;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The device models of model_distance_calculations.json, indexed by manufacturer then model so
+ * that finding the best match for a device does not score every known model.
+ * <p>
+ * Matches follow {@link AndroidModel#matchScore(AndroidModel)}: the manufacturer is compared
+ * ignoring case, then the model, build number and version must be equal in turn.
+ */
+final class ModelTable {
+
+    /**
+     * A known device model and the calculator built from its coefficients
+     */
+    static final class Entry {
+        @NonNull
+        final AndroidModel model;
+        @NonNull
+        final DistanceCalculator calculator;
+        // Built the first time distances are calculated from rounded RSSI values
+        @Nullable
+        private volatile DistanceCalculator mRoundedCalculator;
+
+        Entry(@NonNull AndroidModel model, @NonNull DistanceCalculator calculator) {
+            this.model = model;
+            this.calculator = calculator;
+        }
+
+        /**
+         * @return the calculator of the model, reading distances of RSSI values rounded to the
+         * nearest whole dBm from tables
+         */
+        @NonNull
+        DistanceCalculator roundedCalculator() {
+            DistanceCalculator roundedCalculator = mRoundedCalculator;
+            if (roundedCalculator == null) {
+                // Concurrent callers may wrap the calculator twice; both wrappers are identical.
+                roundedCalculator = new TableDrivenDistanceCalculator(calculator);
+                mRoundedCalculator = roundedCalculator;
+            }
+            return roundedCalculator;
+        }
+    }
+
+    // Lower case manufacturer -> model -> entries in table order
+    private final Map<String, Map<String, List<Entry>>> mEntries;
+    @Nullable
+    private final Entry mDefaultEntry;
+    private final int mSize;
+
+    private ModelTable(@NonNull Map<String, Map<String, List<Entry>>> entries, @Nullable Entry defaultEntry, int size) {
+        mEntries = entries;
+        mDefaultEntry = defaultEntry;
+        mSize = size;
+    }
+
+    @NonNull
+    static ModelTable empty() {
+        return new ModelTable(new HashMap<String, Map<String, List<Entry>>>(), null, 0);
+    }
+
+    @NonNull
+    static ModelTable parse(@NonNull String jsonString) throws JSONException {
+        Map<String, Map<String, List<Entry>>> entries = new HashMap<>();
+        Entry defaultEntry = null;
+        JSONArray array = new JSONObject(jsonString).getJSONArray("models");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject modelObject = array.getJSONObject(i);
+            AndroidModel androidModel = new AndroidModel(modelObject.getString("version"),
+                    modelObject.getString("build_number"), modelObject.getString("model"),
+                    modelObject.getString("manufacturer"));
+            DistanceCalculator calculator = new CurveFittedDistanceCalculator(modelObject.getDouble("coefficient1"),
+                    modelObject.getDouble("coefficient2"), modelObject.getDouble("coefficient3"));
+            Entry entry = new Entry(androidModel, calculator);
+
+            Map<String, List<Entry>> models = entries.get(key(androidModel.mManufacturer));
+            if (models == null) {
+                models = new HashMap<>();
+                entries.put(key(androidModel.mManufacturer), models);
+            }
+            List<Entry> builds = models.get(androidModel.mModel);
+            if (builds == null) {
+                builds = new ArrayList<>(1);
+                models.put(androidModel.mModel, builds);
+            }
+            builds.add(entry);
+            if (modelObject.optBoolean("default", false)) {
+                defaultEntry = entry;
+            }
+        }
+        return new ModelTable(entries, defaultEntry, array.length());
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the entry matching the model best, the default entry if none matches at all, or
+     * null if there is no default either
+     */
+    @Nullable
+    Entry find(@NonNull AndroidModel model) {
+        Map<String, List<Entry>> models = model.mManufacturer == null ? null : mEntries.get(key(model.mManufacturer));
+        if (models == null) {
+            return mDefaultEntry;
+        }
+        List<Entry> builds = model.mModel == null ? null : models.get(model.mModel);
+        if (builds == null) {
+            // Only the manufacturer matches, any of its models is as good as the others
+            return models.values().iterator().next().get(0);
+        }
+        Entry best = builds.get(0);
+        for (Entry entry : builds) {
+            if (entry.model.mBuildNumber.equals(model.mBuildNumber)) {
+                if (entry.model.mVersion.equals(model.mVersion)) {
+                    return entry;
+                }
+                if (!best.model.mBuildNumber.equals(model.mBuildNumber)) {
+                    best = entry;
+                }
+            }
+        }
+        return best;
+    }
+
+    @NonNull
+    private static String key(@NonNull String manufacturer) {
+        return manufacturer.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.distance;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A <code>DistanceCalculator</code> decorator that evaluates the wrapped calculator once for every
+ * whole RSSI value of a given txPower and afterwards answers from a lookup table indexed by the
+ * rounded RSSI.
+ * <p>
+ * Tables are built lazily, the first time a txPower is seen, and hold one entry per RSSI value
+ * between -128 and 127 dBm.  Any txPower or RSSI outside of the signed byte range is passed to the
+ * wrapped calculator.  The wrapped calculator must be a pure function of its arguments.
+ * <p>
+ * Running average RSSI values are usually fractional.  By default they are rounded to the nearest
+ * table entry; construct this class with <code>exactForFractionalRssi</code> set to keep the
+ * results identical to the wrapped calculator for those values.
+ */
+public class TableDrivenDistanceCalculator implements DistanceCalculator {
+
+    private static final int MIN_VALUE = Byte.MIN_VALUE;
+    private static final int MAX_VALUE = Byte.MAX_VALUE;
+    private static final int TABLE_SIZE = MAX_VALUE - MIN_VALUE + 1;
+
+    @NonNull
+    private final DistanceCalculator mDelegate;
+    private final boolean mExactForFractionalRssi;
+    private final AtomicReferenceArray<double[]> mTables = new AtomicReferenceArray<>(TABLE_SIZE);
+
+    /**
+     * Wraps a calculator, rounding fractional RSSI values to the nearest table entry
+     *
+     * @param delegate the calculator used to fill the tables
+     */
+    public TableDrivenDistanceCalculator(@NonNull DistanceCalculator delegate) {
+        this(delegate, false);
+    }
+
+    /**
+     * @param delegate               the calculator used to fill the tables
+     * @param exactForFractionalRssi if true, RSSI values that are not whole numbers are passed to
+     *                               the wrapped calculator rather than rounded
+     */
+    public TableDrivenDistanceCalculator(@NonNull DistanceCalculator delegate, boolean exactForFractionalRssi) {
+        mDelegate = delegate;
+        mExactForFractionalRssi = exactForFractionalRssi;
+    }
+
+    /**
+     * @return the wrapped calculator
+     */
+    @NonNull
+    public DistanceCalculator getDelegate() {
+        return mDelegate;
+    }
+
+    /**
+     * @return true if fractional RSSI values are passed to the wrapped calculator
+     */
+    public boolean isExactForFractionalRssi() {
+        return mExactForFractionalRssi;
+    }
+
+    @Override
+    public double calculateDistance(int txPower, double rssi) {
+        if (txPower < MIN_VALUE || txPower > MAX_VALUE || !(rssi >= MIN_VALUE - 0.5 && rssi < MAX_VALUE + 0.5)) {
+            return mDelegate.calculateDistance(txPower, rssi);
+        }
+        double rounded = Math.rint(rssi);
+        if (mExactForFractionalRssi && rounded != rssi) {
+            return mDelegate.calculateDistance(txPower, rssi);
+        }
+        return tableFor(txPower)[(int) rounded - MIN_VALUE];
+    }
+
+    private double[] tableFor(int txPower) {
+        int index = txPower - MIN_VALUE;
+        double[] table = mTables.get(index);
+        if (table == null) {
+            // Concurrent callers may build the same table twice; both results are identical.
+            table = new double[TABLE_SIZE];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                table[i] = mDelegate.calculateDistance(txPower, i + MIN_VALUE);
+            }
+            if (!mTables.compareAndSet(index, null, table)) {
+                table = mTables.get(index);
+            }
+        }
+        return table;
+    }
+}
@@ -44,6 +44,14 @@ public class IoFileConfiguration {
         }
     }
 
+    /**
+     * Sets the strategy reading and writing the files of the library.  The monitored region
+     * states are only saved by appending each change when the strategy is a
+     * {@link DefaultIoFileStrategy}, or a subclass of it writing bytes as they are.  With any
+     * other strategy, each change of a region state rewrites the states of all regions.
+     *
+     * @param ioFileStrategy the strategy to use
+     */
     public static void setIoFileConfiguration(@Nullable IOFileStrategy ioFileStrategy) {
         if (ioFileStrategy == null)
             throw new IllegalArgumentException("io File Strategy MUST not be null!");
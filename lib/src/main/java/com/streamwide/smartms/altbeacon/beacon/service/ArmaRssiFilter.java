@@ -46,6 +46,13 @@ public class ArmaRssiFilter implements RssiFilter {
         this.armaSpeed = DEFAULT_ARMA_SPEED;
     }
 
+    /**
+     * @param armaSpeed the coefficient c of the formula above
+     */
+    public ArmaRssiFilter(double armaSpeed) {
+        this.armaSpeed = armaSpeed;
+    }
+
     public void addMeasurement(@NonNull Integer rssi) {
         LogManager.d(TAG, "adding rssi: %s", rssi);
         //use first measurement as initialization
@@ -76,4 +83,24 @@ public class ArmaRssiFilter implements RssiFilter {
         DEFAULT_ARMA_SPEED = default_arma_speed;
     }
 
+    /**
+     * Creates filters with a given ARMA speed, so that regions may use differently tuned filters
+     */
+    public static class Factory implements RssiFilter.Factory {
+        private final double mArmaSpeed;
+
+        /**
+         * @param armaSpeed the coefficient c of the formula above
+         */
+        public Factory(double armaSpeed) {
+            mArmaSpeed = armaSpeed;
+        }
+
+        @NonNull
+        @Override
+        public RssiFilter create() {
+            return new ArmaRssiFilter(mArmaSpeed);
+        }
+    }
+
 }
@@ -0,0 +1,215 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+
+import com.streamwide.smartms.altbeacon.beacon.AltBeaconParser;
+import com.streamwide.smartms.altbeacon.beacon.BeaconParser;
+import com.streamwide.smartms.altbeacon.bluetooth.BleAdvertisement;
+import com.streamwide.smartms.altbeacon.bluetooth.Pdu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Dispatch table from the bytes a <code>BeaconParser</code> matches on to the parsers themselves.
+ * <p>
+ * Each parser is indexed under the bytes it requires at a fixed offset of a PDU: its service
+ * UUID when it has one, otherwise its beacon type code.  For a given packet, only the parsers
+ * whose bytes are actually present are candidates, and packets for which no parser is a candidate
+ * are rejected without running any parser.  Candidates are returned in the iteration order of the
+ * parser collection the index was built from, so the first matching parser is the same one as
+ * when trying every parser in turn.
+ * <p>
+ * Parsers that cannot be indexed (subclasses with their own matching logic, or layouts matching
+ * more than eight bytes) are candidates for every packet.
+ * <p>
+ * Instances of this class are immutable, so those can be shared without problem between threads.
+ */
+final class BeaconParserIndex {
+    // Candidate sets are held in a long bit mask, one bit per parser
+    private static final int MAX_INDEXED_PARSERS = Long.SIZE;
+    private static final int MAX_KEY_LENGTH = 8;
+
+    @NonNull
+    private final BeaconParser[] mParsers;
+    /**
+     * Parsers that are candidates for every packet
+     */
+    private final long mAlwaysCandidates;
+    @NonNull
+    private final MatchSite[] mSites;
+    private final boolean mIndexed;
+
+    /**
+     * A place in a PDU that some parsers match on, with the candidate parsers for each value
+     */
+    private static final class MatchSite {
+        final int offset;
+        final int length;
+        long[] keys = new long[0];
+        long[] candidates = new long[0];
+
+        MatchSite(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void add(long key, int parserOrdinal) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    candidates[i] |= 1L << parserOrdinal;
+                    return;
+                }
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            candidates = Arrays.copyOf(candidates, candidates.length + 1);
+            keys[keys.length - 1] = key;
+            candidates[candidates.length - 1] = 1L << parserOrdinal;
+        }
+
+        long lookup(@NonNull byte[] bytes, int pduStartIndex) {
+            int start = pduStartIndex + offset;
+            if (start < 0 || bytes.length - start < length) {
+                return 0L;
+            }
+            long key = readKey(bytes, start, length);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return candidates[i];
+                }
+            }
+            return 0L;
+        }
+    }
+
+    BeaconParserIndex(@NonNull Collection<BeaconParser> parsers) {
+        mParsers = parsers.toArray(new BeaconParser[0]);
+        mIndexed = mParsers.length <= MAX_INDEXED_PARSERS;
+        long alwaysCandidates = 0L;
+        List<MatchSite> sites = new ArrayList<>();
+        if (mIndexed) {
+            for (int ordinal = 0; ordinal < mParsers.length; ordinal++) {
+                BeaconParser parser = mParsers[ordinal];
+                if (!isIndexable(parser)) {
+                    alwaysCandidates |= 1L << ordinal;
+                    continue;
+                }
+                Long serviceUuid = parser.getServiceUuid();
+                if (serviceUuid != null && serviceUuid != -1) {
+                    int offset = parser.getMServiceUuidStartOffset();
+                    int length = parser.getServiceUuidEndOffset() - offset + 1;
+                    if (length <= 0 || length > MAX_KEY_LENGTH) {
+                        alwaysCandidates |= 1L << ordinal;
+                        continue;
+                    }
+                    byte[] expected = BeaconParser.longToByteArray(serviceUuid, length, false);
+                    addToSite(sites, offset, expected, ordinal);
+                } else if (parser.getMatchingBeaconTypeCodeEndOffset() >= 0) {
+                    int offset = parser.getMatchingBeaconTypeCodeStartOffset();
+                    int length = parser.getMatchingBeaconTypeCodeEndOffset() - offset + 1;
+                    if (offset < 0 || length <= 0 || length > MAX_KEY_LENGTH) {
+                        // Either no bytes to compare, so the parser matches any PDU, or too many
+                        alwaysCandidates |= 1L << ordinal;
+                        continue;
+                    }
+                    byte[] expected = BeaconParser.longToByteArray(parser.getMatchingBeaconTypeCode(), length);
+                    addToSite(sites, offset, expected, ordinal);
+                }
+                // Otherwise the layout has nothing to match on and can never produce a beacon
+            }
+        }
+        mAlwaysCandidates = alwaysCandidates;
+        mSites = sites.toArray(new MatchSite[0]);
+    }
+
+    private static void addToSite(@NonNull List<MatchSite> sites, int offset, @NonNull byte[] expected, int ordinal) {
+        MatchSite site = null;
+        for (MatchSite candidate : sites) {
+            if (candidate.offset == offset && candidate.length == expected.length) {
+                site = candidate;
+                break;
+            }
+        }
+        if (site == null) {
+            site = new MatchSite(offset, expected.length);
+            sites.add(site);
+        }
+        site.add(readKey(expected, 0, expected.length), ordinal);
+    }
+
+    /**
+     * Only the matching logic of the parsers shipped with the library is known to the index.
+     */
+    private static boolean isIndexable(@NonNull BeaconParser parser) {
+        return parser.getClass() == BeaconParser.class || parser.getClass() == AltBeaconParser.class;
+    }
+
+    private static long readKey(@NonNull byte[] bytes, int start, int length) {
+        long key = 0L;
+        for (int i = 0; i < length; i++) {
+            key = (key << 8) | (bytes[start + i] & 0xff);
+        }
+        return key;
+    }
+
+    /**
+     * @return the number of parsers in this index
+     */
+    int size() {
+        return mParsers.length;
+    }
+
+    /**
+     * Returns a bit mask of the parsers that may decode the advertisement.  Bit <code>n</code> is
+     * set when {@link #getParser(int) getParser(n)} is a candidate.  A value of 0 means no parser
+     * can decode the advertisement.  Must not be called if {@link #isIndexed()} is false.
+     */
+    long candidates(@NonNull BleAdvertisement advertisement) {
+        long candidates = mAlwaysCandidates;
+        byte[] bytes = advertisement.getBytes();
+        if (bytes == null) {
+            return candidates;
+        }
+        for (int pduIndex = 0, pduCount = advertisement.getPduCount(); pduIndex < pduCount; pduIndex++) {
+            byte type = advertisement.getPduType(pduIndex);
+            if (type != Pdu.MANUFACTURER_DATA_PDU_TYPE && type != Pdu.GATT_SERVICE_UUID_PDU_TYPE) {
+                continue;
+            }
+            int pduStartIndex = advertisement.getPduStartIndex(pduIndex);
+            for (MatchSite site : mSites) {
+                candidates |= site.lookup(bytes, pduStartIndex);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return false when there are too many parsers to index, in which case every parser must
+     * be tried in turn
+     */
+    boolean isIndexed() {
+        return mIndexed;
+    }
+
+    @NonNull
+    BeaconParser getParser(int ordinal) {
+        return mParsers[ordinal];
+    }
+}
@@ -316,7 +316,7 @@ public class BeaconService extends Service {
                 LogManager.i(TAG, "Already ranging that region -- will replace existing region.");
                 mScanHelper.getRangedRegionState().remove(region); // need to remove it, otherwise the old object will be retained because they are .equal //FIXME That is not true
             }
-            mScanHelper.getRangedRegionState().put(region, new RangeState(callback));
+            mScanHelper.getRangedRegionState().put(region, new RangeState(callback, BeaconManager.getRegionRssiFilterFactory(region)));
             LogManager.d(TAG, "Currently ranging %s regions.", mScanHelper.getRangedRegionState().size());
         }
         if (mScanHelper.getCycledScanner() != null) {
@@ -20,34 +20,91 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
+import com.streamwide.smartms.altbeacon.beacon.utils.LongKeyedTable;
 import com.streamwide.smartms.altbeacon.beacon.utils.SerializableSparseArray;
 import com.streamwide.smartms.altbeacon.beacon.utils.SparseArrayIterator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
- * Keeps track of beacons that have ever been seen and
+ * Keeps track of beacons that have recently been seen and
  * merges them together depending on configured beacon parsers
  * Created by dyoung on 5/5/15.
+ * <p>
+ * Tracked beacons are looked up by a <code>long</code> key packing the 48 bit bluetooth address
+ * and the 16 bit service UUID, in a {@link LongKeyedTable}, so that tracking a beacon builds no
+ * string.  A device not seen for {@link BeaconManager#getExtraDataBeaconTrackingTtlMillis()} is
+ * forgotten, and so is the least recently seen device when more than
+ * {@link BeaconManager#getExtraDataBeaconTrackingMaxSize()} are tracked, so that rotating
+ * bluetooth addresses do not make the tracker grow without bounds.
  */
 public class ExtraDataBeaconTracker implements Serializable {
-    private static final String TAG = "BeaconTracker";
-
     /**
-     * This is a lookup table to find tracked beacons by the calculated beacon key
+     * Default maximum number of devices tracked
      */
-    @NonNull
-    private final HashMap<String, SerializableSparseArray<Beacon>> mBeaconsByKey = new HashMap<>();
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    /**
+     * Default time after which a device not seen is forgotten
+     */
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+
+    private static final long serialVersionUID = 2L;
+    private static final String TAG = "BeaconTracker";
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NONE = LongKeyedTable.NONE;
 
     private final boolean matchBeaconsByServiceUUID;
+    private final int mMaxSize;
+    private final long mTtlMillis;
+    private long mEvictionCount = 0;
+
+    /*
+     * The tracked beacons are kept in entries 0 to mSize - 1 of the arrays below, linked from the
+     * least to the most recently seen.  They are written by writeObject rather than serialized
+     * as is.
+     */
+    private transient int mSize;
+    private transient long[] mKeys;
+    private transient SerializableSparseArray<Beacon>[] mBeacons;
+    private transient long[] mLastSeenTimes;
+    private transient int[] mOlder;
+    private transient int[] mNewer;
+    private transient int mOldest;
+    private transient int mNewest;
+    private transient LongKeyedTable mTable;
 
     public ExtraDataBeaconTracker() {
         this(true);
     }
 
     public ExtraDataBeaconTracker(boolean matchBeaconsByServiceUUID) {
+        this(matchBeaconsByServiceUUID, BeaconManager.getExtraDataBeaconTrackingMaxSize(),
+                BeaconManager.getExtraDataBeaconTrackingTtlMillis());
+    }
+
+    /**
+     * @param matchBeaconsByServiceUUID true to track beacons with different service UUIDs from
+     *                                  the same device separately
+     * @param maxSize                   maximum number of devices tracked
+     * @param ttlMillis                 time in milliseconds after which a device not seen is
+     *                                  forgotten
+     */
+    public ExtraDataBeaconTracker(boolean matchBeaconsByServiceUUID, int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be > 0.");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be > 0.");
+        }
         this.matchBeaconsByServiceUUID = matchBeaconsByServiceUUID;
+        mMaxSize = maxSize;
+        mTtlMillis = ttlMillis;
+        allocate(Math.min(INITIAL_CAPACITY, maxSize));
     }
 
     /**
@@ -55,56 +112,234 @@ public class ExtraDataBeaconTracker implements Serializable {
      * frames. Returns null when passed a Gatt-based beacon that has is only extra beacon data.
      */
     @Nullable
-    public synchronized Beacon track(@NonNull Beacon beacon) {
+    public Beacon track(@NonNull Beacon beacon) {
         Beacon trackedBeacon = null;
         if (beacon.isMultiFrameBeacon() || beacon.getServiceUuid() != -1) {
-            trackedBeacon = trackGattBeacon(beacon);
+            // Only Gatt-based beacons touch the shared table
+            synchronized (this) {
+                trackedBeacon = trackGattBeacon(beacon, System.currentTimeMillis());
+            }
         } else {
             trackedBeacon = beacon;
         }
         return trackedBeacon;
     }
 
+    /**
+     * @return the number of devices currently tracked
+     */
+    public synchronized int getTrackedBeaconCount() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of devices forgotten, because they were not seen for too long or to
+     * make room for other devices
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
     /**
      * The following code is for dealing with merging data fields in beacons
      */
     @Nullable
-    private Beacon trackGattBeacon(@NonNull Beacon beacon) {
+    private Beacon trackGattBeacon(@NonNull Beacon beacon, long nowMillis) {
+        evictExpired(nowMillis);
+        long key = getBeaconKey(beacon);
+        int entry = mTable.get(key);
         if (beacon.isExtraBeaconData()) {
-            updateTrackedBeacons(beacon);
+            if (entry != NONE) {
+                updateTrackedBeacons(mBeacons[entry], beacon);
+                touch(entry, nowMillis);
+            }
             return null;
         }
 
-        String key = getBeaconKey(beacon);
-        SerializableSparseArray<Beacon> matchingTrackedBeacons = mBeaconsByKey.get(key);
-        if (null == matchingTrackedBeacons) {
-            matchingTrackedBeacons = new SerializableSparseArray<>();
+        if (entry == NONE) {
+            entry = insert(key, new SerializableSparseArray<Beacon>(), nowMillis);
         } else {
-            Beacon trackedBeacon = SparseArrayIterator.iterate(matchingTrackedBeacons).next();
+            Beacon trackedBeacon = SparseArrayIterator.iterate(mBeacons[entry]).next();
             beacon.setExtraDataFields(trackedBeacon.getExtraDataFields());
+            touch(entry, nowMillis);
         }
-        matchingTrackedBeacons.put(beacon.hashCode(), beacon);
-        mBeaconsByKey.put(key, matchingTrackedBeacons);
+        mBeacons[entry].put(beacon.hashCode(), beacon);
+        ScanProcessingStats.getInstance().setExtraDataBeaconsTracked(mSize);
 
         return beacon;
     }
 
-    private void updateTrackedBeacons(@NonNull Beacon beacon) {
-        SerializableSparseArray<Beacon> matchingTrackedBeacons = mBeaconsByKey.get(getBeaconKey(beacon));
-        if (null != matchingTrackedBeacons) {
-            for (int i = 0, nSize = matchingTrackedBeacons.size(); i < nSize; i++) {
-                Beacon matchingTrackedBeacon = matchingTrackedBeacons.valueAt(i);
-                matchingTrackedBeacon.setRssi(beacon.getRssi());
-                matchingTrackedBeacon.setExtraDataFields(beacon.getDataFields());
-            }
+    private void updateTrackedBeacons(@NonNull SerializableSparseArray<Beacon> matchingTrackedBeacons,
+                                      @NonNull Beacon beacon) {
+        for (int i = 0, nSize = matchingTrackedBeacons.size(); i < nSize; i++) {
+            Beacon matchingTrackedBeacon = matchingTrackedBeacons.valueAt(i);
+            matchingTrackedBeacon.setRssi(beacon.getRssi());
+            matchingTrackedBeacon.setExtraDataFields(beacon.getDataFields());
         }
     }
 
-    private String getBeaconKey(@NonNull Beacon beacon) {
+    private long getBeaconKey(@NonNull Beacon beacon) {
+        long key = LongKeyedTable.parseMacAddress(beacon.getBluetoothAddress()) << 16;
         if (matchBeaconsByServiceUUID) {
-            return beacon.getBluetoothAddress() + beacon.getServiceUuid();
+            key |= beacon.getServiceUuid() & 0xffff;
+        }
+        return key;
+    }
+
+    private void evictExpired(long nowMillis) {
+        int evicted = 0;
+        while (mOldest != NONE && nowMillis - mLastSeenTimes[mOldest] >= mTtlMillis) {
+            remove(mOldest);
+            evicted++;
+        }
+        recordEvictions(evicted);
+    }
+
+    private void recordEvictions(int evicted) {
+        if (evicted > 0) {
+            mEvictionCount += evicted;
+            ScanProcessingStats.getInstance().recordExtraDataBeaconsEvicted(evicted);
+            ScanProcessingStats.getInstance().setExtraDataBeaconsTracked(mSize);
+        }
+    }
+
+    private int insert(long key, @NonNull SerializableSparseArray<Beacon> beacons, long lastSeenTime) {
+        if (mSize == mMaxSize) {
+            remove(mOldest);
+            recordEvictions(1);
+        }
+        if (mSize == mKeys.length) {
+            grow();
+        }
+        int entry = mSize++;
+        mKeys[entry] = key;
+        mBeacons[entry] = beacons;
+        mLastSeenTimes[entry] = lastSeenTime;
+        link(entry);
+        mTable.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Marks an entry as the most recently seen
+     */
+    private void touch(int entry, long lastSeenTime) {
+        mLastSeenTimes[entry] = lastSeenTime;
+        if (entry != mNewest) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    private void remove(int entry) {
+        mTable.remove(mKeys[entry], entry);
+        unlink(entry);
+
+        // Keep entries contiguous by moving the last one into the removed one
+        int last = --mSize;
+        if (entry != last) {
+            mKeys[entry] = mKeys[last];
+            mBeacons[entry] = mBeacons[last];
+            mLastSeenTimes[entry] = mLastSeenTimes[last];
+            mOlder[entry] = mOlder[last];
+            mNewer[entry] = mNewer[last];
+            if (mOlder[entry] == NONE) {
+                mOldest = entry;
+            } else {
+                mNewer[mOlder[entry]] = entry;
+            }
+            if (mNewer[entry] == NONE) {
+                mNewest = entry;
+            } else {
+                mOlder[mNewer[entry]] = entry;
+            }
+            mTable.move(mKeys[entry], last, entry);
+        }
+        mBeacons[last] = null;
+    }
+
+    private void link(int entry) {
+        mOlder[entry] = mNewest;
+        mNewer[entry] = NONE;
+        if (mNewest == NONE) {
+            mOldest = entry;
+        } else {
+            mNewer[mNewest] = entry;
+        }
+        mNewest = entry;
+    }
+
+    private void unlink(int entry) {
+        if (mOlder[entry] == NONE) {
+            mOldest = mNewer[entry];
+        } else {
+            mNewer[mOlder[entry]] = mNewer[entry];
+        }
+        if (mNewer[entry] == NONE) {
+            mNewest = mOlder[entry];
         } else {
-            return beacon.getBluetoothAddress();
+            mOlder[mNewer[entry]] = mOlder[entry];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        mSize = 0;
+        mKeys = new long[capacity];
+        mBeacons = (SerializableSparseArray<Beacon>[]) new SerializableSparseArray[capacity];
+        mLastSeenTimes = new long[capacity];
+        mOlder = new int[capacity];
+        mNewer = new int[capacity];
+        mOldest = NONE;
+        mNewest = NONE;
+        mTable = new LongKeyedTable(capacity);
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) mKeys.length * 2, mMaxSize);
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mBeacons = Arrays.copyOf(mBeacons, capacity);
+        mLastSeenTimes = Arrays.copyOf(mLastSeenTimes, capacity);
+        mOlder = Arrays.copyOf(mOlder, capacity);
+        mNewer = Arrays.copyOf(mNewer, capacity);
+        mTable = new LongKeyedTable(capacity);
+        for (int entry = 0; entry < mSize; entry++) {
+            mTable.put(mKeys[entry], entry);
+        }
+    }
+
+    private synchronized void writeObject(@NonNull ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(mSize);
+        // SparseArray fields are not serializable, so the beacons are written one by one
+        for (int entry = mOldest; entry != NONE; entry = mNewer[entry]) {
+            out.writeLong(mKeys[entry]);
+            out.writeLong(mLastSeenTimes[entry]);
+            SerializableSparseArray<Beacon> beacons = mBeacons[entry];
+            out.writeInt(beacons.size());
+            for (int i = 0; i < beacons.size(); i++) {
+                out.writeInt(beacons.keyAt(i));
+                out.writeObject(beacons.valueAt(i));
+            }
+        }
+    }
+
+    private void readObject(@NonNull ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        allocate(Math.max(Math.min(size, mMaxSize), Math.min(INITIAL_CAPACITY, mMaxSize)));
+        for (int i = 0; i < size; i++) {
+            long key = in.readLong();
+            long lastSeenTime = in.readLong();
+            int beaconCount = in.readInt();
+            SerializableSparseArray<Beacon> beacons = new SerializableSparseArray<>();
+            for (int j = 0; j < beaconCount; j++) {
+                int hashCode = in.readInt();
+                beacons.put(hashCode, (Beacon) in.readObject());
+            }
+            if (beacons.size() > 0 && mTable.get(key) == NONE) {
+                insert(key, beacons, lastSeenTime);
+            }
         }
     }
 }
@@ -0,0 +1,163 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
+
+/**
+ * This filter estimates the rssi with a one dimensional Kalman filter, which models the rssi as
+ * a constant drifting by the process noise between measurements, and each measurement as the rssi
+ * plus the measurement noise.  Its state is the estimate and its variance, whatever the number
+ * of measurements, which makes it suited to tracking a large number of beacons.
+ * <p>
+ * The higher the process noise relative to the measurement noise, the faster the estimate follows
+ * changes of the rssi, and the less it smooths measurements out.
+ * <p>
+ * Measurements expire like those of {@link RunningAverageRssiFilter}: when no measurement was
+ * added for the sample expiration time, the filter has no measurements available, so that the
+ * beacon is no longer ranged, and the next measurement starts a new estimate.
+ */
+public class KalmanRssiFilter implements RssiFilter {
+
+    private static final String TAG = "KalmanRssiFilter";
+    /**
+     * Default variance, in dBm², by which the rssi may drift between two measurements
+     */
+    public static final double DEFAULT_PROCESS_NOISE = 0.125;
+    /**
+     * Default variance, in dBm², of a measurement around the rssi
+     */
+    public static final double DEFAULT_MEASUREMENT_NOISE = 4.0;
+    public static final long DEFAULT_SAMPLE_EXPIRATION_MILLISECONDS = 20000; /* 20 seconds */
+
+    private final double mProcessNoise;
+    private final double mMeasurementNoise;
+    private final long mSampleExpirationMilliseconds;
+    private double mEstimate;
+    private double mEstimateVariance;
+    private int mMeasurementCount = 0;
+    private long mLastMeasurementTimestamp;
+
+    public KalmanRssiFilter() {
+        this(DEFAULT_PROCESS_NOISE, DEFAULT_MEASUREMENT_NOISE, DEFAULT_SAMPLE_EXPIRATION_MILLISECONDS);
+    }
+
+    /**
+     * @param processNoise                 variance, in dBm², by which the rssi may drift between
+     *                                     two measurements
+     * @param measurementNoise             variance, in dBm², of a measurement around the rssi
+     * @param sampleExpirationMilliseconds time without measurements after which the estimate is
+     *                                     dropped
+     */
+    public KalmanRssiFilter(double processNoise, double measurementNoise, long sampleExpirationMilliseconds) {
+        checkParameters(processNoise, measurementNoise, sampleExpirationMilliseconds);
+        mProcessNoise = processNoise;
+        mMeasurementNoise = measurementNoise;
+        mSampleExpirationMilliseconds = sampleExpirationMilliseconds;
+    }
+
+    @Override
+    public void addMeasurement(@NonNull Integer rssi) {
+        addMeasurement(rssi, SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public synchronized void addMeasurement(@NonNull Integer rssi, long timestamp) {
+        if (isExpired(timestamp)) {
+            mEstimate = rssi;
+            mEstimateVariance = mMeasurementNoise;
+            mMeasurementCount = 1;
+        } else {
+            double predictedVariance = mEstimateVariance + mProcessNoise;
+            double gain = predictedVariance / (predictedVariance + mMeasurementNoise);
+            mEstimate += gain * (rssi - mEstimate);
+            mEstimateVariance = (1 - gain) * predictedVariance;
+            mMeasurementCount++;
+        }
+        mLastMeasurementTimestamp = timestamp;
+    }
+
+    @Override
+    public synchronized boolean noMeasurementsAvailable() {
+        return isExpired(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @return the number of measurements the current estimate is based on, or 0 if they expired
+     */
+    @Override
+    public synchronized int getMeasurementCount() {
+        return isExpired(SystemClock.elapsedRealtime()) ? 0 : mMeasurementCount;
+    }
+
+    @Override
+    public synchronized double calculateRssi() {
+        LogManager.d(TAG, "Kalman rssi based on %s measurements: %s",
+                mMeasurementCount, mEstimate);
+        return mEstimate;
+    }
+
+    private static void checkParameters(double processNoise, double measurementNoise,
+                                        long sampleExpirationMilliseconds) {
+        if (processNoise < 0) {
+            throw new IllegalArgumentException("Process noise must be >= 0.");
+        }
+        if (measurementNoise <= 0) {
+            throw new IllegalArgumentException("Measurement noise must be > 0.");
+        }
+        if (sampleExpirationMilliseconds <= 0) {
+            throw new IllegalArgumentException("Sample expiration must be > 0.");
+        }
+    }
+
+    private boolean isExpired(long now) {
+        return mMeasurementCount == 0 || now - mLastMeasurementTimestamp >= mSampleExpirationMilliseconds;
+    }
+
+    /**
+     * Creates Kalman filters with given noises, so that regions may use differently tuned filters
+     */
+    public static class Factory implements RssiFilter.Factory {
+        private final double mProcessNoise;
+        private final double mMeasurementNoise;
+        private final long mSampleExpirationMilliseconds;
+
+        public Factory() {
+            this(DEFAULT_PROCESS_NOISE, DEFAULT_MEASUREMENT_NOISE, DEFAULT_SAMPLE_EXPIRATION_MILLISECONDS);
+        }
+
+        /**
+         * @see KalmanRssiFilter#KalmanRssiFilter(double, double, long)
+         */
+        public Factory(double processNoise, double measurementNoise, long sampleExpirationMilliseconds) {
+            checkParameters(processNoise, measurementNoise, sampleExpirationMilliseconds);
+            mProcessNoise = processNoise;
+            mMeasurementNoise = measurementNoise;
+            mSampleExpirationMilliseconds = sampleExpirationMilliseconds;
+        }
+
+        @NonNull
+        @Override
+        public RssiFilter create() {
+            return new KalmanRssiFilter(mProcessNoise, mMeasurementNoise, mSampleExpirationMilliseconds);
+        }
+    }
+}
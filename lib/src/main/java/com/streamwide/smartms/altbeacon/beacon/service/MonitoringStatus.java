@@ -16,11 +16,13 @@
 package com.streamwide.smartms.altbeacon.beacon.service;
 
 import android.content.Context;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
 import com.streamwide.smartms.altbeacon.beacon.MonitorNotifier;
 import com.streamwide.smartms.altbeacon.beacon.Region;
 import com.streamwide.smartms.altbeacon.beacon.io.IoFileConfiguration;
@@ -30,28 +32,57 @@ import com.streamwide.smartms.lib.template.serialization.ValidatorClassNameMatch
 import java.io.File;
 import java.io.IOException;
 import java.io.InvalidClassException;
-import java.security.GeneralSecurityException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MonitoringStatus {
 
     private static MonitoringStatus sInstance;
 
-    private static final int MAX_REGIONS_FOR_STATUS_PRESERVATION = 50;
     private static final int MAX_STATUS_PRESERVATION_FILE_AGE_TO_RESTORE_SECS = 60 * 15;
     private static final String TAG = MonitoringStatus.class.getSimpleName();
+    /**
+     * Serialized region states written by earlier versions, only read if there is no journal
+     */
     public static final String STATUS_PRESERVATION_FILE_NAME =
             "org.altbeacon.beacon.service.monitoring_status_state";
+    public static final String STATUS_JOURNAL_FILE_NAME =
+            "org.altbeacon.beacon.service.monitoring_status_journal";
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+    @Nullable
+    private volatile Map<Region, RegionMonitoringState> mRegionsStatesMap;
+    /**
+     * Index of mRegionsStatesMap read by the processing threads without locking.  Updated by
+     * every change to the map.
+     */
+    @NonNull
+    private final RegionIndex<RegionMonitoringState> mRegionIndex = new RegionIndex<>();
+    /**
+     * The inside regions of mRegionsStatesMap by exit deadline
+     */
+    @NonNull
+    private final RegionExitQueue mExitQueue = new RegionExitQueue();
 
-    private Map<Region, RegionMonitoringState> mRegionsStatesMap;
+    private volatile boolean mStatePreservationIsOn = true;
+    @Nullable
+    private RegionStateJournal mJournal;
 
-    private boolean mStatePreservationIsOn = true;
+    /**
+     * Time the region states were last confirmed.  Written to the last modified time of the
+     * status preservation file at most once per flush interval, by mStatusFlushExecutor.
+     */
+    private volatile long mLastStatusUpdateTime = 0;
+    private volatile long mLastStatusFlushTime = 0;
+    private final AtomicBoolean mStatusFlushScheduled = new AtomicBoolean();
+    @NonNull
+    private final ScheduledThreadPoolExecutor mStatusFlushExecutor;
 
     @NonNull
     public static MonitoringStatus getInstance() {
@@ -66,16 +97,32 @@ public class MonitoringStatus {
     }
 
     private MonitoringStatus() {
-
+        mStatusFlushExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "Flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mStatusFlushExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);
+        mStatusFlushExecutor.allowCoreThreadTimeOut(true);
     }
 
     public synchronized void addRegion(@NonNull Context context, @NonNull Region region, @NonNull Callback callback) {
-        addLocalRegion(context, region, callback);
+        RegionMonitoringState state = addLocalRegion(context, region, callback);
+        if (mStatePreservationIsOn) {
+            getJournal(context).regionAdded(region, state);
+        }
         saveMonitoringStatusIfOn(context);
     }
 
     public synchronized void removeRegion(@NonNull Context context, @NonNull Region region) {
-        removeLocalRegion(context, region);
+        getRegionsStateMap(context).remove(region);
+        mRegionIndex.remove(region);
+        if (mStatePreservationIsOn) {
+            getJournal(context).regionRemoved(region);
+        }
         saveMonitoringStatusIfOn(context);
     }
 
@@ -93,17 +140,23 @@ public class MonitoringStatus {
         return getRegionsStateMap(context).get(region);
     }
 
+    /**
+     * Marks outside the regions in which no beacon was seen for longer than the region exit
+     * period.  Only looks at the regions whose exit deadline has passed.
+     */
     public synchronized void updateNewlyOutside(@NonNull Context context) {
-        Iterator<Region> monitoredRegionIterator = regions(context).iterator();
+        Map<Region, RegionMonitoringState> states = getRegionsStateMap(context);
+        List<Region> exitedRegions = mExitQueue.markOutsideExpired(states, SystemClock.elapsedRealtime(),
+                BeaconManager.getRegionExitPeriod());
         boolean needsMonitoringStateSaving = false;
-        while (monitoredRegionIterator.hasNext()) {
-            Region region = monitoredRegionIterator.next();
-            RegionMonitoringState state = stateOf(context, region);
-            if (state.markOutsideIfExpired()) {
-                needsMonitoringStateSaving = true;
-                LogManager.d(TAG, "found a monitor that expired: %s", region);
-                state.getCallback().call(context, "monitoringData", new MonitoringData(state.getInside(), region).toBundle());
+        for (Region region : exitedRegions) {
+            RegionMonitoringState state = states.get(region);
+            needsMonitoringStateSaving = true;
+            LogManager.d(TAG, "found a monitor that expired: %s", region);
+            if (mStatePreservationIsOn) {
+                getJournal(context).stateChanged(region, state);
             }
+            state.getCallback().call(context, "monitoringData", new MonitoringData(state.getInside(), region).toBundle());
         }
         if (needsMonitoringStateSaving) {
             saveMonitoringStatusIfOn(context);
@@ -112,19 +165,36 @@ public class MonitoringStatus {
         }
     }
 
-    public synchronized void updateNewlyInsideInRegionsContaining(@NonNull Context context, @NonNull Beacon beacon) {
-        List<Region> matchingRegions = regionsMatchingTo(context, beacon);
+    /**
+     * Marks the regions matching a beacon as inside.  Called for every detected beacon, from any
+     * number of threads: the monitor of this object is only taken when a region is newly entered.
+     */
+    public void updateNewlyInsideInRegionsContaining(@NonNull Context context, @NonNull Beacon beacon) {
+        if (mRegionsStatesMap == null) {
+            synchronized (this) {
+                getRegionsStateMap(context);
+            }
+        }
         boolean needsMonitoringStateSaving = false;
-        for (Region region : matchingRegions) {
-            RegionMonitoringState state = getRegionsStateMap(context).get(region);
-            if (state != null && state.markInside()) {
+        // The index may be read while regions are added or removed
+        for (RegionIndex.Entry<RegionMonitoringState> entry : mRegionIndex.match(beacon)) {
+            RegionMonitoringState state = entry.value;
+            if (state.markInside()) {
                 needsMonitoringStateSaving = true;
-                state.getCallback().call(context, "monitoringData",
-                        new MonitoringData(state.getInside(), region).toBundle());
+                synchronized (this) {
+                    mExitQueue.schedule(entry.region, state, BeaconManager.getRegionExitPeriod());
+                    state.getCallback().call(context, "monitoringData",
+                            new MonitoringData(state.getInside(), entry.region).toBundle());
+                    if (mStatePreservationIsOn) {
+                        getJournal(context).stateChanged(entry.region, state);
+                    }
+                }
             }
         }
         if (needsMonitoringStateSaving) {
-            saveMonitoringStatusIfOn(context);
+            synchronized (this) {
+                saveMonitoringStatusIfOn(context);
+            }
         } else {
             updateMonitoringStatusTime(context, System.currentTimeMillis());
         }
@@ -141,6 +211,8 @@ public class MonitoringStatus {
     private void restoreOrInitializeMonitoringStatus(Context context) {
         long millisSinceLastMonitor = System.currentTimeMillis() - getLastMonitoringStatusUpdateTime(context);
         mRegionsStatesMap = new ConcurrentHashMap<Region, RegionMonitoringState>();
+        mRegionIndex.clear();
+        mExitQueue.clear();
         if (!mStatePreservationIsOn) {
             LogManager.d(TAG, "Not restoring monitoring state because persistence is disabled");
         } else if (millisSinceLastMonitor > MAX_STATUS_PRESERVATION_FILE_AGE_TO_RESTORE_SECS * 1000) {
@@ -151,71 +223,99 @@ public class MonitoringStatus {
         }
     }
 
-    private List<Region> regionsMatchingTo(Context context, Beacon beacon) {
-        List<Region> matched = new ArrayList<Region>();
-        for (Region region : regions(context)) {
-            if (region.matchesBeacon(beacon)) {
-                matched.add(region);
-            } else {
-                LogManager.d(TAG, "This region (%s) does not match beacon: %s", region, beacon);
-            }
-        }
-        return matched;
-    }
-
-    protected void saveMonitoringStatusIfOn(@NonNull Context context) {
+    /**
+     * Makes sure the persisted region states are complete.  Region state changes are appended to
+     * the journal as they happen: this only rewrites the journal when it needs compaction.
+     */
+    protected synchronized void saveMonitoringStatusIfOn(@NonNull Context context) {
         if (!mStatePreservationIsOn) return;
         LogManager.d(TAG, "saveMonitoringStatusIfOn()");
-        if (getRegionsStateMap(context).size() > MAX_REGIONS_FOR_STATUS_PRESERVATION) {
-            LogManager.w(TAG, "Too many regions being monitored.  Will not persist region state");
-            String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
-            File file = new File(tempFile);
-            if (!file.delete()) {
+        RegionStateJournal journal = getJournal(context);
+        if (journal.needsCompaction()) {
+            journal.compact(getRegionsStateMap(context));
+            File legacyFile = new File(getStatusFilePath(context, STATUS_PRESERVATION_FILE_NAME));
+            if (legacyFile.exists() && !legacyFile.delete()) {
                 LogManager.e(TAG, "Cannot delete existing file.");
             }
+            // Writing the file set its last modified time
+            mLastStatusUpdateTime = System.currentTimeMillis();
+            mLastStatusFlushTime = mLastStatusUpdateTime;
         } else {
-            try {
-                Map<Region, RegionMonitoringState> map = getRegionsStateMap(context);
-                // Must convert ConcurrentHashMap to HashMap becasue attempting to serialize
-                // ConcurrentHashMap throws a java.io.NotSerializableException
-                HashMap<Region, RegionMonitoringState> serializableMap = new HashMap<Region, RegionMonitoringState>();
-                for (Region region : map.keySet()) {
-                    serializableMap.put(region, map.get(region));
-                }
-                String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
-                IoFileConfiguration.getIoFileStrategy().writeObject(context, serializableMap, tempFile);
+            updateMonitoringStatusTime(context, System.currentTimeMillis());
+        }
+    }
 
-            } catch (IOException e) {
-                LogManager.e(TAG, "Error while saving monitored region states to file ", e);
-            } catch (GeneralSecurityException e) {
-                LogManager.e(TAG, "GeneralSecurityException", e);
-            }
+    @NonNull
+    private RegionStateJournal getJournal(@NonNull Context context) {
+        if (mJournal == null) {
+            mJournal = new RegionStateJournal(getStatusFilePath(context, STATUS_JOURNAL_FILE_NAME));
         }
+        return mJournal;
     }
 
-    protected void updateMonitoringStatusTime(@NonNull Context context, long time) {
-        String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
-        File file = new File(tempFile);
+    @NonNull
+    private static String getStatusFilePath(@NonNull Context context, @NonNull String fileName) {
+        return IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + fileName;
+    }
+
+    /**
+     * Records that the region states were confirmed at the given time.  The time is written to
+     * disk at most once per {@link BeaconManager#getMonitoringStatusFlushIntervalMillis()}, on a
+     * background thread, unless the interval is zero.
+     */
+    protected void updateMonitoringStatusTime(@NonNull final Context context, long time) {
+        mLastStatusUpdateTime = time;
+        long intervalMillis = BeaconManager.getMonitoringStatusFlushIntervalMillis();
+        if (intervalMillis == 0) {
+            writeMonitoringStatusTime(context, time);
+            return;
+        }
+        if (mStatusFlushScheduled.compareAndSet(false, true)) {
+            long delayMillis = Math.max(0, mLastStatusFlushTime + intervalMillis - time);
+            mStatusFlushExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // Cleared first so that an update made during the write schedules a new one
+                    mStatusFlushScheduled.set(false);
+                    long lastUpdateTime = mLastStatusUpdateTime;
+                    // Zero once the file was deleted
+                    if (mStatePreservationIsOn && lastUpdateTime != 0) {
+                        writeMonitoringStatusTime(context, lastUpdateTime);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeMonitoringStatusTime(@NonNull Context context, long time) {
+        mLastStatusFlushTime = time;
+        File file = new File(getStatusFilePath(context, STATUS_JOURNAL_FILE_NAME));
         if (!file.setLastModified(time)) {
             LogManager.w(TAG, "Unable to modify the last-modified time of the file or directory");
         }
     }
 
     protected long getLastMonitoringStatusUpdateTime(@NonNull Context context) {
-        String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
-        File file = new File(tempFile);
-        return file.lastModified();
+        File file = new File(getStatusFilePath(context, STATUS_JOURNAL_FILE_NAME));
+        if (!file.exists()) {
+            file = new File(getStatusFilePath(context, STATUS_PRESERVATION_FILE_NAME));
+        }
+        // The last update may not have been flushed yet
+        return Math.max(file.lastModified(), mLastStatusUpdateTime);
     }
 
     protected void restoreMonitoringStatus(@NonNull Context context) {
         try {
-            String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
-
-            ValidatorClassNameMatcher validatorClassNameMatcher = new ValidatorClassNameMatcher
-                    .Builder()
-                    .accept("*")
-                    .build();
-            Map<Region, RegionMonitoringState> obj = (Map<Region, RegionMonitoringState>) IoFileConfiguration.getIoFileStrategy().readObject(context, tempFile, validatorClassNameMatcher);
+            Map<Region, RegionMonitoringState> obj = getJournal(context).read();
+            if (obj == null) {
+                String tempFile = getStatusFilePath(context, STATUS_PRESERVATION_FILE_NAME);
+
+                ValidatorClassNameMatcher validatorClassNameMatcher = new ValidatorClassNameMatcher
+                        .Builder()
+                        .accept("*")
+                        .build();
+                obj = (Map<Region, RegionMonitoringState>) IoFileConfiguration.getIoFileStrategy().readObject(context, tempFile, validatorClassNameMatcher);
+            }
 
             LogManager.d(TAG, "Restored region monitoring state for " + obj.size() + " regions.");
             for (Region region : obj.keySet()) {
@@ -232,6 +332,12 @@ public class MonitoringStatus {
             }
 
             mRegionsStatesMap.putAll(obj);
+            for (Map.Entry<Region, RegionMonitoringState> entry : obj.entrySet()) {
+                mRegionIndex.put(entry.getKey(), entry.getValue());
+                if (entry.getValue().getInside()) {
+                    mExitQueue.schedule(entry.getKey(), entry.getValue(), BeaconManager.getRegionExitPeriod());
+                }
+            }
 
         } catch (IOException | ClassCastException e) {
             if (e instanceof InvalidClassException) {
@@ -244,11 +350,13 @@ public class MonitoringStatus {
      * Client applications should not call directly.  Call BeaconManager#setRegionStatePeristenceEnabled
      */
     public synchronized void stopStatusPreservation(@NonNull Context context) {
+        getJournal(context).delete();
         String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
         File file = new File(tempFile);
         if (!file.delete()) {
             LogManager.e(TAG, "Cannot delete existing file.");
         }
+        mLastStatusUpdateTime = 0;
 
         this.mStatePreservationIsOn = false;
     }
@@ -268,12 +376,16 @@ public class MonitoringStatus {
     }
 
     public synchronized void clear(@NonNull Context context) {
+        getJournal(context).delete();
         String tempFile = IoFileConfiguration.getIoFileStrategy().getRootDirectoryPath(context) + File.separator + STATUS_PRESERVATION_FILE_NAME;
         File file = new File(tempFile);
         if (!file.delete()) {
             LogManager.e(TAG, "Cannot delete existing file.");
         }
+        mLastStatusUpdateTime = 0;
         getRegionsStateMap(context).clear();
+        mRegionIndex.clear();
+        mExitQueue.clear();
     }
 
     public void updateLocalState(@NonNull Context context, @NonNull Region region, @Nullable Integer state) {
@@ -288,18 +400,38 @@ public class MonitoringStatus {
             }
             if (state == MonitorNotifier.INSIDE) {
                 internalState.markInside();
+                scheduleExit(region, internalState);
             }
+            invalidateJournal();
         }
     }
 
     public void removeLocalRegion(@NonNull Context context, @NonNull Region region) {
         getRegionsStateMap(context).remove(region);
+        mRegionIndex.remove(region);
+        invalidateJournal();
     }
 
     @NonNull
     public RegionMonitoringState addLocalRegion(@NonNull Context context, @NonNull Region region) {
         Callback dummyCallback = new Callback(null);
-        return addLocalRegion(context, region, dummyCallback);
+        RegionMonitoringState state = addLocalRegion(context, region, dummyCallback);
+        invalidateJournal();
+        return state;
+    }
+
+    private synchronized void scheduleExit(@NonNull Region region, @NonNull RegionMonitoringState state) {
+        mExitQueue.schedule(region, state, BeaconManager.getRegionExitPeriod());
+    }
+
+    /**
+     * Local changes are not appended to the journal: they are persisted by the next save, which
+     * rewrites it
+     */
+    private synchronized void invalidateJournal() {
+        if (mJournal != null) {
+            mJournal.invalidate();
+        }
     }
 
     private RegionMonitoringState addLocalRegion(Context context, Region region, Callback callback) {
@@ -316,6 +448,7 @@ public class MonitoringStatus {
                         LogManager.d(TAG, "New definition: " + region);
                         LogManager.d(TAG, "clearing state");
                         getRegionsStateMap(context).remove(region);
+                        mRegionIndex.remove(region);
                         break;
                     }
                 }
@@ -323,6 +456,7 @@ public class MonitoringStatus {
         }
         RegionMonitoringState monitoringState = new RegionMonitoringState(callback);
         getRegionsStateMap(context).put(region, monitoringState);
+        mRegionIndex.put(region, monitoringState);
         return monitoringState;
     }
 }
@@ -14,26 +14,67 @@
  */
 package com.streamwide.smartms.altbeacon.beacon.service;
 
+import android.os.SystemClock;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
+/**
+ * Beacons ranged in a region.
+ * <p>
+ * Beacons are added by the processing threads into the active generation of their stripe, which
+ * only takes a short lock to record them.  A generation keeps the latest beacon of each distinct
+ * beacon added, with the rssi and receive time of each of its packets in primitive arrays, so
+ * that it grows with the number of beacons in range rather than with the number of packets.  The
+ * beacons of a generation are kept from one cycle to the next, and only dropped once a cycle
+ * passed without packets from them, so that beacons staying in range allocate nothing.  At
+ * the end of a scan cycle, each stripe swaps its active generation with the spare one, so that
+ * threads keep adding beacons while the retired generation is folded into the ranged beacons,
+ * each packet being passed to the filters with the time it was received.  The ranged beacons are
+ * then compacted in place.
+ */
 public class RangeState implements Serializable {
     private static final String TAG = "RangeState";
+    // Beacons are spread by identity over independently locked stripes, so that threads adding
+    // different beacons rarely contend.  Must be a power of two.
+    private static final int STRIPE_COUNT = 16;
     private Callback mCallback;
-    private final Object lockObj = new Object();
-    private Map<Beacon, RangedBeacon> mRangedBeacons = new HashMap<Beacon, RangedBeacon>();
+    private final Stripe[] mStripes = new Stripe[STRIPE_COUNT];
+    // Null to use the factory set on BeaconManager for all regions
+    @Nullable
+    private transient volatile RssiFilter.Factory mRssiFilterFactory;
     private static boolean sUseTrackingCache = false;
 
     public RangeState(@NonNull Callback c) {
+        this(c, null);
+    }
+
+    /**
+     * @param c                 callback receiving the ranged beacons
+     * @param rssiFilterFactory factory of the filters of the beacons ranged, or null to use the
+     *                          factory set on BeaconManager for all regions
+     */
+    public RangeState(@NonNull Callback c, @Nullable RssiFilter.Factory rssiFilterFactory) {
         mCallback = c;
+        mRssiFilterFactory = rssiFilterFactory;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mStripes[i] = new Stripe();
+        }
     }
 
     @NonNull
@@ -41,18 +82,19 @@ public class RangeState implements Serializable {
         return mCallback;
     }
 
+    /**
+     * Sets the factory of the filters of beacons first seen from now on.  Used to restore it after
+     * deserialization, as factories are not serialized.
+     */
+    void setRssiFilterFactory(@Nullable RssiFilter.Factory rssiFilterFactory) {
+        mRssiFilterFactory = rssiFilterFactory;
+    }
+
     public void addBeacon(@NonNull Beacon beacon) {
-        RangedBeacon rangedBeacon = mRangedBeacons.get(beacon);
-        if (rangedBeacon != null) {
-            if (LogManager.isVerboseLoggingEnabled()) {
-                LogManager.d(TAG, "adding %s to existing range for: %s", beacon, rangedBeacon);
-            }
-            rangedBeacon.updateBeacon(beacon);
-        } else {
-            if (LogManager.isVerboseLoggingEnabled()) {
-                LogManager.d(TAG, "adding %s to new rangedBeacon", beacon);
-            }
-            mRangedBeacons.put(beacon, new RangedBeacon(beacon));
+        long timestamp = SystemClock.elapsedRealtime();
+        Stripe stripe = stripeOf(beacon);
+        synchronized (stripe) {
+            stripe.active.add(beacon, timestamp);
         }
     }
 
@@ -60,38 +102,87 @@ public class RangeState implements Serializable {
     // be there for the next cycle
     @NonNull
     public synchronized Collection<Beacon> finalizeBeacons() {
-        Map<Beacon, RangedBeacon> newRangedBeacons = new HashMap<Beacon, RangedBeacon>();
-        ArrayList<Beacon> finalizedBeacons = new ArrayList<Beacon>();
-
-        synchronized (lockObj) {
-            for (Beacon beacon : mRangedBeacons.keySet()) {
-                RangedBeacon rangedBeacon = mRangedBeacons.get(beacon);
-                if (rangedBeacon != null) {
-                    if (rangedBeacon.isTracked()) {
-                        rangedBeacon.commitMeasurements(); // calculates accuracy
-                        if (!rangedBeacon.noMeasurementsAvailable()) {
-                            finalizedBeacons.add(rangedBeacon.getBeacon());
-                        }
-                    }
-                    // If we still have useful measurements, keep it around but mark it as not
-                    // tracked anymore so we don't pass it on as visible unless it is seen again
-                    if (!rangedBeacon.noMeasurementsAvailable() == true) {
-                        //if TrackingCache is enabled, allow beacon to not receive
-                        //measurements for a certain amount of time
-                        if (!sUseTrackingCache || rangedBeacon.isExpired())
-                            rangedBeacon.setTracked(false);
-                        newRangedBeacons.put(beacon, rangedBeacon);
-                    } else {
-                        LogManager.d(TAG, "Dumping beacon from RangeState because it has no recent measurements.");
+        int rangedBeaconCount = 0;
+        for (Stripe stripe : mStripes) {
+            foldAddedBeacons(stripe);
+            rangedBeaconCount += stripe.rangedBeacons.size();
+        }
+        ArrayList<Beacon> finalizedBeacons = new ArrayList<Beacon>(rangedBeaconCount);
+        for (Stripe stripe : mStripes) {
+            Iterator<RangedBeacon> iterator = stripe.rangedBeacons.values().iterator();
+            while (iterator.hasNext()) {
+                RangedBeacon rangedBeacon = iterator.next();
+                if (rangedBeacon.isTracked()) {
+                    rangedBeacon.commitMeasurements(); // calculates accuracy
+                    if (!rangedBeacon.noMeasurementsAvailable()) {
+                        finalizedBeacons.add(rangedBeacon.getBeacon());
                     }
                 }
+                // If we still have useful measurements, keep it around but mark it as not
+                // tracked anymore so we don't pass it on as visible unless it is seen again
+                if (!rangedBeacon.noMeasurementsAvailable() == true) {
+                    //if TrackingCache is enabled, allow beacon to not receive
+                    //measurements for a certain amount of time
+                    if (!sUseTrackingCache || rangedBeacon.isExpired())
+                        rangedBeacon.setTracked(false);
+                } else {
+                    LogManager.d(TAG, "Dumping beacon from RangeState because it has no recent measurements.");
+                    iterator.remove();
+                }
             }
-            mRangedBeacons = newRangedBeacons;
         }
 
         return finalizedBeacons;
     }
 
+    /**
+     * Retires the active generation of a stripe, and adds the beacons it holds to the ranged
+     * beacons.  Only called with the monitor of this object held.
+     */
+    private void foldAddedBeacons(@NonNull Stripe stripe) {
+        RssiFilter.Factory rssiFilterFactory = mRssiFilterFactory;
+        if (rssiFilterFactory == null) {
+            rssiFilterFactory = BeaconManager.getRssiFilterFactory();
+        }
+        Generation added;
+        synchronized (stripe) {
+            added = stripe.active;
+            stripe.active = stripe.spare;
+            stripe.spare = added;
+        }
+        Iterator<Packets> iterator = added.packetsByBeacon.values().iterator();
+        while (iterator.hasNext()) {
+            Packets packets = iterator.next();
+            if (packets.count == 0) {
+                // No packets from the beacon during the cycle
+                iterator.remove();
+                continue;
+            }
+            Beacon beacon = packets.beacon;
+            RangedBeacon rangedBeacon = stripe.rangedBeacons.get(beacon);
+            if (rangedBeacon != null) {
+                if (LogManager.isVerboseLoggingEnabled()) {
+                    LogManager.d(TAG, "adding %s to existing range for: %s", beacon, rangedBeacon);
+                }
+            } else {
+                if (LogManager.isVerboseLoggingEnabled()) {
+                    LogManager.d(TAG, "adding %s to new rangedBeacon", beacon);
+                }
+                rangedBeacon = new RangedBeacon(rssiFilterFactory);
+                stripe.rangedBeacons.put(beacon, rangedBeacon);
+            }
+            rangedBeacon.updateBeacon(beacon, packets.firstCycleDetectionTimestamp,
+                    packets.rssis, packets.timestamps, packets.count);
+            packets.clear();
+        }
+    }
+
+    @NonNull
+    private Stripe stripeOf(@NonNull Beacon beacon) {
+        int hash = beacon.hashCode();
+        return mStripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+    }
+
     public static void setUseTrackingCache(boolean useTrackingCache) {
         RangeState.sUseTrackingCache = useTrackingCache;
     }
@@ -100,4 +191,83 @@ public class RangeState implements Serializable {
         return sUseTrackingCache;
     }
 
+    private synchronized void writeObject(@NonNull ObjectOutputStream out) throws IOException {
+        // Beacons added since the last cycle end are only kept in the transient generations
+        for (Stripe stripe : mStripes) {
+            foldAddedBeacons(stripe);
+        }
+        out.defaultWriteObject();
+    }
+
+    private static class Stripe implements Serializable {
+        // Only accessed with the monitor of the RangeState held
+        @NonNull
+        final Map<Beacon, RangedBeacon> rangedBeacons = new HashMap<Beacon, RangedBeacon>();
+        // Guarded by this
+        @NonNull
+        transient Generation active = new Generation();
+        // Only accessed with the monitor of the RangeState held, except for the swap
+        @NonNull
+        transient Generation spare = new Generation();
+
+        private void readObject(@NonNull ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            active = new Generation();
+            spare = new Generation();
+        }
+    }
+
+    /**
+     * Beacons added during a scan cycle, each one with its packets.  Beacons are kept with no
+     * packets from one cycle to the next, until a cycle without packets from them is folded.
+     */
+    private static class Generation {
+        @NonNull
+        final Map<Beacon, Packets> packetsByBeacon = new HashMap<Beacon, Packets>();
+
+        void add(@NonNull Beacon beacon, long timestamp) {
+            Packets packets = packetsByBeacon.get(beacon);
+            if (packets == null) {
+                packets = new Packets();
+                packetsByBeacon.put(beacon, packets);
+            }
+            packets.add(beacon, timestamp);
+        }
+    }
+
+    /**
+     * Packets received from one beacon during a scan cycle: its latest beacon, and the rssi and
+     * receive time of each packet
+     */
+    private static class Packets {
+        private static final int INITIAL_CAPACITY = 8;
+
+        @Nullable
+        Beacon beacon;
+        long firstCycleDetectionTimestamp;
+        @NonNull
+        int[] rssis = new int[INITIAL_CAPACITY];
+        @NonNull
+        long[] timestamps = new long[INITIAL_CAPACITY];
+        int count = 0;
+
+        void add(@NonNull Beacon beacon, long timestamp) {
+            if (count == rssis.length) {
+                rssis = Arrays.copyOf(rssis, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+            }
+            if (count == 0) {
+                firstCycleDetectionTimestamp = beacon.getFirstCycleDetectionTimestamp();
+            }
+            this.beacon = beacon;
+            rssis[count] = beacon.getRssi();
+            timestamps[count] = timestamp;
+            count++;
+        }
+
+        void clear() {
+            beacon = null;
+            count = 0;
+        }
+    }
 }
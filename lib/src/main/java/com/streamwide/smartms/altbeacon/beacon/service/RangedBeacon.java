@@ -25,7 +25,6 @@ import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
 
 public class RangedBeacon implements Serializable {
 
@@ -40,6 +39,9 @@ public class RangedBeacon implements Serializable {
     Beacon mBeacon;
     @Nullable
     protected transient RssiFilter mFilter = null;
+    // Null to use the factory set on BeaconManager for all regions
+    @Nullable
+    private transient RssiFilter.Factory mFilterFactory = null;
     private int packetCount = 0;
     private long firstCycleDetectionTimestamp = 0;
     private long lastCycleDetectionTimestamp = 0;
@@ -48,6 +50,22 @@ public class RangedBeacon implements Serializable {
         updateBeacon(beacon);
     }
 
+    /**
+     * @param filterFactory factory of the filter of the region the beacon is ranged in
+     */
+    public RangedBeacon(@NonNull Beacon beacon, @NonNull RssiFilter.Factory filterFactory) {
+        mFilterFactory = filterFactory;
+        updateBeacon(beacon);
+    }
+
+    /**
+     * Creates a ranged beacon updated by {@link #updateBeacon(Beacon, long, int[], long[], int)}
+     * right after
+     */
+    RangedBeacon(@NonNull RssiFilter.Factory filterFactory) {
+        mFilterFactory = filterFactory;
+    }
+
     public void updateBeacon(@NonNull Beacon beacon) {
         packetCount += 1;
         mBeacon = beacon;
@@ -58,6 +76,29 @@ public class RangedBeacon implements Serializable {
         addMeasurement(mBeacon.getRssi());
     }
 
+    /**
+     * Adds the packets received from the beacon during a scan cycle
+     *
+     * @param beacon                       beacon of the latest packet
+     * @param firstCycleDetectionTimestamp first cycle detection timestamp of the first packet
+     * @param rssis                        rssi of each packet
+     * @param timestamps                   time each packet was received, as given by
+     *                                     <code>SystemClock.elapsedRealtime()</code>
+     * @param count                        number of packets
+     */
+    void updateBeacon(@NonNull Beacon beacon, long firstCycleDetectionTimestamp,
+                      @NonNull int[] rssis, @NonNull long[] timestamps, int count) {
+        packetCount += count;
+        mBeacon = beacon;
+        if (this.firstCycleDetectionTimestamp == 0) {
+            this.firstCycleDetectionTimestamp = firstCycleDetectionTimestamp;
+        }
+        lastCycleDetectionTimestamp = beacon.getLastCycleDetectionTimestamp();
+        for (int i = 0; i < count; i++) {
+            addMeasurement(rssis[i], timestamps[i]);
+        }
+    }
+
     public boolean isTracked() {
         return mTracked;
     }
@@ -91,13 +132,17 @@ public class RangedBeacon implements Serializable {
     }
 
     public void addMeasurement(@NonNull Integer rssi) {
+        addMeasurement(rssi, SystemClock.elapsedRealtime());
+    }
+
+    private void addMeasurement(int rssi, long timestamp) {
         // Filter out unreasonable values per
         // http://stackoverflow.com/questions/30118991/rssi-returned-by-altbeacon-library-127-messes-up-distance
         if (rssi != 127) {
             mTracked = true;
-            lastTrackedTimeMillis = SystemClock.elapsedRealtime();
+            lastTrackedTimeMillis = timestamp;
             if (getFilter() != null) {
-                mFilter.addMeasurement(rssi);
+                mFilter.addMeasurement(rssi, timestamp);
             }
         }
     }
@@ -132,11 +177,12 @@ public class RangedBeacon implements Serializable {
     private RssiFilter getFilter() {
         if (mFilter == null) {
             //set RSSI filter
+            RssiFilter.Factory filterFactory = mFilterFactory != null
+                    ? mFilterFactory : BeaconManager.getRssiFilterFactory();
             try {
-                Constructor cons = BeaconManager.getRssiFilterImplClass().getConstructors()[0];
-                mFilter = (RssiFilter) cons.newInstance();
-            } catch (Exception e) {
-                LogManager.e(TAG, "Could not construct RssiFilterImplClass %s", BeaconManager.getRssiFilterImplClass().getName());
+                mFilter = filterFactory.create();
+            } catch (RuntimeException e) {
+                LogManager.e(e, TAG, "Could not create RSSI filter with %s", filterFactory);
             }
         }
         return mFilter;
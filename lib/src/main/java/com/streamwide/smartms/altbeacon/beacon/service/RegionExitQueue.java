@@ -0,0 +1,138 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+
+import com.streamwide.smartms.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Regions monitored as inside, ordered by the time they will be exited if no beacon is seen:
+ * their last seen time plus the region exit period.  Finding the regions to mark outside only
+ * looks at the regions whose deadline has passed, instead of every monitored region.
+ * <p>
+ * Deadlines are not moved when a region is seen again.  A region whose deadline passed while it
+ * was seen since is queued again with a deadline based on its new last seen time.
+ * <p>
+ * Not thread safe: MonitoringStatus calls it while holding its monitor.
+ */
+final class RegionExitQueue {
+
+    private static final class Deadline {
+        @NonNull
+        final Region region;
+        @NonNull
+        final RegionMonitoringState state;
+        long time;
+
+        Deadline(@NonNull Region region, @NonNull RegionMonitoringState state) {
+            this.region = region;
+            this.state = state;
+        }
+    }
+
+    private static final Comparator<Deadline> DEADLINE_ORDER = new Comparator<Deadline>() {
+        @Override
+        public int compare(Deadline d1, Deadline d2) {
+            return Long.compare(d1.time, d2.time);
+        }
+    };
+
+    private PriorityQueue<Deadline> mQueue = new PriorityQueue<>(11, DEADLINE_ORDER);
+    // RegionMonitoringState does not override equals: keys are compared by identity
+    private final Map<RegionMonitoringState, Deadline> mDeadlines = new HashMap<>();
+    private long mExitPeriod = 0;
+
+    /**
+     * Queues an inside region, unless it is already queued
+     */
+    void schedule(@NonNull Region region, @NonNull RegionMonitoringState state, long exitPeriod) {
+        if (mDeadlines.containsKey(state)) {
+            return;
+        }
+        updateExitPeriod(exitPeriod);
+        Deadline deadline = new Deadline(region, state);
+        deadline.time = state.getLastSeenTime() + exitPeriod;
+        mDeadlines.put(state, deadline);
+        mQueue.add(deadline);
+    }
+
+    /**
+     * Marks outside the queued regions that have not been seen for longer than the exit period,
+     * and queues again the regions whose deadline passed but which were seen since.
+     *
+     * @param states the monitored regions: queued regions no longer in it are dropped
+     * @param now    the current time, from <code>SystemClock.elapsedRealtime()</code>
+     * @return the regions newly outside
+     */
+    @NonNull
+    List<Region> markOutsideExpired(@NonNull Map<Region, RegionMonitoringState> states, long now, long exitPeriod) {
+        updateExitPeriod(exitPeriod);
+        List<Region> exited = null;
+        Deadline deadline;
+        while ((deadline = mQueue.peek()) != null && deadline.time < now) {
+            mQueue.poll();
+            RegionMonitoringState state = deadline.state;
+            if (states.get(deadline.region) != state) {
+                mDeadlines.remove(state);
+            } else if (state.markOutsideIfExpired()) {
+                mDeadlines.remove(state);
+                if (exited == null) {
+                    exited = new ArrayList<>();
+                }
+                exited.add(deadline.region);
+            } else if (state.getInside() && state.getLastSeenTime() > 0) {
+                // Seen since the deadline was set, so the new deadline is not before now
+                deadline.time = state.getLastSeenTime() + exitPeriod;
+                mQueue.add(deadline);
+            } else {
+                mDeadlines.remove(state);
+            }
+        }
+        return exited == null ? Collections.<Region>emptyList() : exited;
+    }
+
+    void clear() {
+        mQueue.clear();
+        mDeadlines.clear();
+    }
+
+    int size() {
+        return mQueue.size();
+    }
+
+    private void updateExitPeriod(long exitPeriod) {
+        if (exitPeriod == mExitPeriod) {
+            return;
+        }
+        mExitPeriod = exitPeriod;
+        PriorityQueue<Deadline> queue = new PriorityQueue<>(Math.max(11, mDeadlines.size()), DEADLINE_ORDER);
+        for (Deadline deadline : mDeadlines.values()) {
+            deadline.time = deadline.state.getLastSeenTime() + exitPeriod;
+            queue.add(deadline);
+        }
+        mQueue = queue;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.Identifier;
+import com.streamwide.smartms.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of regions by the identifiers they require, to find the regions matching a beacon
+ * without calling <code>Region.matchesBeacon</code> on every region.
+ * <p>
+ * Regions are grouped by the positions of their non-null identifiers: regions defined by id1 only
+ * form one group, regions defined by id1 and id2 another, and regions without any identifier fall
+ * in the wildcard group.  Within a group, regions are hashed on their identifiers at those
+ * positions.  Finding the regions matching a beacon takes one hash lookup per group, whatever the
+ * number of regions.
+ * <p>
+ * The index is updated region by region.  Lookups may run on any thread without locking,
+ * concurrently with updates.
+ */
+final class RegionIndex<V> {
+    private static final Object WILDCARD_KEY = new Object();
+
+    /**
+     * A region and the value it was indexed with
+     */
+    static final class Entry<V> {
+        @NonNull
+        final Region region;
+        @NonNull
+        final V value;
+
+        Entry(@NonNull Region region, @NonNull V value) {
+            this.region = region;
+            this.value = value;
+        }
+    }
+
+    // Guarded by this
+    private final Map<Region, Entry<V>> mEntries = new HashMap<>();
+    // Copy on write, so that lookups can iterate without locking
+    @NonNull
+    private volatile Group<V>[] mGroups = newGroups(0);
+
+    synchronized void put(@NonNull Region region, @NonNull V value) {
+        removeEntry(region);
+        Entry<V> entry = new Entry<>(region, value);
+        mEntries.put(region, entry);
+        int[] positions = positionsOf(region);
+        Group<V> group = findGroup(positions);
+        if (group == null) {
+            group = new Group<>(positions);
+            Group<V>[] groups = Arrays.copyOf(mGroups, mGroups.length + 1);
+            groups[groups.length - 1] = group;
+            mGroups = groups;
+        }
+        group.add(entry);
+    }
+
+    synchronized void remove(@NonNull Region region) {
+        removeEntry(region);
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+        mGroups = newGroups(0);
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return the entries of the regions matching the beacon, in no particular order
+     */
+    @NonNull
+    List<Entry<V>> match(@NonNull Beacon beacon) {
+        List<Identifier> beaconIdentifiers = beacon.getIdentifiers();
+        List<Entry<V>> matches = null;
+        for (Group<V> group : mGroups) {
+            Object key = group.keyOf(beaconIdentifiers);
+            if (key == null) {
+                continue;
+            }
+            Entry<V>[] bucket = group.buckets.get(key);
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry<V> entry : bucket) {
+                // Identifiers match by construction, but the bluetooth address still has to
+                if (entry.region.matchesBeacon(beacon)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>(bucket.length);
+                    }
+                    matches.add(entry);
+                }
+            }
+        }
+        return matches == null ? Collections.<Entry<V>>emptyList() : matches;
+    }
+
+    private void removeEntry(@NonNull Region region) {
+        Entry<V> entry = mEntries.remove(region);
+        if (entry == null) {
+            return;
+        }
+        Group<V> group = findGroup(positionsOf(entry.region));
+        if (group != null && group.remove(entry) && group.buckets.isEmpty()) {
+            Group<V>[] groups = newGroups(mGroups.length - 1);
+            int i = 0;
+            for (Group<V> other : mGroups) {
+                if (other != group) {
+                    groups[i++] = other;
+                }
+            }
+            mGroups = groups;
+        }
+    }
+
+    @Nullable
+    private Group<V> findGroup(@NonNull int[] positions) {
+        for (Group<V> group : mGroups) {
+            if (Arrays.equals(group.positions, positions)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static int[] positionsOf(@NonNull Region region) {
+        int count = 0;
+        for (int i = 0; i < region.getIdentifierCount(); i++) {
+            if (region.getIdentifier(i) != null) {
+                count++;
+            }
+        }
+        int[] positions = new int[count];
+        count = 0;
+        for (int i = 0; i < region.getIdentifierCount(); i++) {
+            if (region.getIdentifier(i) != null) {
+                positions[count++] = i;
+            }
+        }
+        return positions;
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private static <V> Group<V>[] newGroups(int length) {
+        return (Group<V>[]) new Group[length];
+    }
+
+    /**
+     * Regions with non-null identifiers at the same positions, hashed on those identifiers
+     */
+    private static final class Group<V> {
+        @NonNull
+        final int[] positions;
+        // Buckets are replaced rather than modified, so that lookups can iterate without locking
+        final ConcurrentHashMap<Object, Entry<V>[]> buckets = new ConcurrentHashMap<>();
+
+        Group(@NonNull int[] positions) {
+            this.positions = positions;
+        }
+
+        void add(@NonNull Entry<V> entry) {
+            Object key = keyOf(entry.region);
+            Entry<V>[] bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = newBucket(1);
+            } else {
+                bucket = Arrays.copyOf(bucket, bucket.length + 1);
+            }
+            bucket[bucket.length - 1] = entry;
+            buckets.put(key, bucket);
+        }
+
+        /**
+         * @return true if the entry was found
+         */
+        boolean remove(@NonNull Entry<V> entry) {
+            Object key = keyOf(entry.region);
+            Entry<V>[] bucket = buckets.get(key);
+            if (bucket == null) {
+                return false;
+            }
+            for (int i = 0; i < bucket.length; i++) {
+                if (bucket[i] == entry) {
+                    if (bucket.length == 1) {
+                        buckets.remove(key);
+                    } else {
+                        Entry<V>[] remaining = newBucket(bucket.length - 1);
+                        System.arraycopy(bucket, 0, remaining, 0, i);
+                        System.arraycopy(bucket, i + 1, remaining, i, bucket.length - i - 1);
+                        buckets.put(key, remaining);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @NonNull
+        private Object keyOf(@NonNull Region region) {
+            switch (positions.length) {
+                case 0:
+                    return WILDCARD_KEY;
+                case 1:
+                    return region.getIdentifier(positions[0]);
+                default:
+                    Identifier[] identifiers = new Identifier[positions.length];
+                    for (int i = 0; i < positions.length; i++) {
+                        identifiers[i] = region.getIdentifier(positions[i]);
+                    }
+                    return new IdentifierTuple(identifiers);
+            }
+        }
+
+        /**
+         * @return the key of the bucket holding the regions of this group a beacon with these
+         * identifiers may match, or null if the beacon lacks one of the identifiers of this group
+         */
+        @Nullable
+        Object keyOf(@NonNull List<Identifier> beaconIdentifiers) {
+            switch (positions.length) {
+                case 0:
+                    return WILDCARD_KEY;
+                case 1:
+                    return positions[0] < beaconIdentifiers.size() ? beaconIdentifiers.get(positions[0]) : null;
+                default:
+                    Identifier[] identifiers = new Identifier[positions.length];
+                    for (int i = 0; i < positions.length; i++) {
+                        if (positions[i] >= beaconIdentifiers.size()) {
+                            return null;
+                        }
+                        identifiers[i] = beaconIdentifiers.get(positions[i]);
+                        if (identifiers[i] == null) {
+                            return null;
+                        }
+                    }
+                    return new IdentifierTuple(identifiers);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @NonNull
+        private static <V> Entry<V>[] newBucket(int length) {
+            return (Entry<V>[]) new Entry[length];
+        }
+    }
+
+    /**
+     * Identifiers at several positions, compared as a whole
+     */
+    private static final class IdentifierTuple {
+        @NonNull
+        private final Identifier[] mIdentifiers;
+        private final int mHashCode;
+
+        IdentifierTuple(@NonNull Identifier[] identifiers) {
+            mIdentifiers = identifiers;
+            mHashCode = Arrays.hashCode(identifiers);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentifierTuple
+                    && Arrays.equals(mIdentifiers, ((IdentifierTuple) other).mIdentifiers);
+        }
+    }
+}
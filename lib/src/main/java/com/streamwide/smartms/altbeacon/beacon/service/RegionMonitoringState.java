@@ -24,6 +24,8 @@ import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 import java.io.Serializable;
 
 public class RegionMonitoringState implements Serializable {
+    // Computed value of the original class, so that persisted states can still be read
+    private static final long serialVersionUID = -9132849578076310339L;
     private static final String TAG = RegionMonitoringState.class.getSimpleName();
     private boolean inside = false;
     private long lastSeenTime = 0l;
@@ -39,7 +41,7 @@ public class RegionMonitoringState implements Serializable {
     }
 
     // returns true if it is newly inside
-    public boolean markInside() {
+    public synchronized boolean markInside() {
         lastSeenTime = SystemClock.elapsedRealtime();
         if (!inside) {
             inside = true;
@@ -48,12 +50,12 @@ public class RegionMonitoringState implements Serializable {
         return false;
     }
 
-    public void markOutside() {
+    public synchronized void markOutside() {
         inside = false;
         lastSeenTime = 0l;
     }
 
-    public boolean markOutsideIfExpired() {
+    public synchronized boolean markOutsideIfExpired() {
         if (inside) {
             if (lastSeenTime > 0 && SystemClock.elapsedRealtime() - lastSeenTime > BeaconManager.getRegionExitPeriod()) {
                 LogManager.d(TAG, "We are newly outside the region because the lastSeenTime of %s "
@@ -67,7 +69,19 @@ public class RegionMonitoringState implements Serializable {
         return false;
     }
 
-    public boolean getInside() {
+    public synchronized boolean getInside() {
         return inside;
     }
+
+    synchronized long getLastSeenTime() {
+        return lastSeenTime;
+    }
+
+    /**
+     * Sets the state read back from persisted storage
+     */
+    synchronized void restore(boolean inside, long lastSeenTime) {
+        this.inside = inside;
+        this.lastSeenTime = lastSeenTime;
+    }
 }
@@ -0,0 +1,336 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.streamwide.smartms.altbeacon.beacon.Identifier;
+import com.streamwide.smartms.altbeacon.beacon.Region;
+import com.streamwide.smartms.altbeacon.beacon.io.DefaultIoFileStrategy;
+import com.streamwide.smartms.altbeacon.beacon.io.IoFileConfiguration;
+import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the monitored region states as a journal of changes, so that each region state
+ * transition appends one small record to the file instead of rewriting the state of every region.
+ * <p>
+ * The file starts with a header, followed by records of three kinds: a region definition, which
+ * gives the region a handle, a state of the region with that handle (inside flag and last seen
+ * time), and the removal of the region with that handle.  Replaying the records in order gives
+ * the latest state of every region.  Once more records were appended than there are regions, the
+ * next save rewrites the file as one definition and one state per region, into a temporary file
+ * renamed over the journal once complete.  An interrupted append only loses the record being
+ * written, and an interrupted rewrite leaves the journal as it was.
+ * <p>
+ * The contents of the file are only written and read through the configured
+ * <code>IOFileStrategy</code>.  Records are only appended with a {@link DefaultIoFileStrategy},
+ * which writes bytes as they are: another strategy may transform each write on its own, for
+ * example to encrypt it, so with it every change rewrites the whole file instead.
+ * <p>
+ * Not thread safe: MonitoringStatus calls it while holding its monitor.
+ */
+final class RegionStateJournal {
+    private static final String TAG = RegionStateJournal.class.getSimpleName();
+    private static final int MAGIC = 0x52534a31;
+    private static final byte RECORD_REGION = 1;
+    private static final byte RECORD_STATE = 2;
+    private static final byte RECORD_REMOVE = 3;
+    private static final int MIN_APPENDS_BEFORE_COMPACTION = 1000;
+
+    @NonNull
+    private final String mPath;
+    // Handles of the regions as defined in the file
+    private final Map<Region, Integer> mHandles = new HashMap<>();
+    private int mNextHandle = 0;
+    private int mAppendedRecords = 0;
+    // Set when the file is missing changes, until the next compaction
+    private boolean mStale = true;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream mOutput = new DataOutputStream(mBuffer);
+
+    RegionStateJournal(@NonNull String path) {
+        mPath = path;
+    }
+
+    @NonNull
+    File getFile() {
+        return new File(mPath);
+    }
+
+    /**
+     * @return true if the file needs to be rewritten, either because some changes could not be
+     * appended or because it holds many more records than regions
+     */
+    boolean needsCompaction() {
+        return mStale || mAppendedRecords > Math.max(MIN_APPENDS_BEFORE_COMPACTION, mHandles.size());
+    }
+
+    /**
+     * Marks the file as missing changes, which are only written by the next compaction
+     */
+    void invalidate() {
+        mStale = true;
+    }
+
+    void regionAdded(@NonNull Region region, @NonNull RegionMonitoringState state) {
+        if (mStale || !canAppend()) {
+            mStale = true;
+            return;
+        }
+        try {
+            mBuffer.reset();
+            Integer previous = mHandles.remove(region);
+            if (previous != null) {
+                writeRemove(previous);
+            }
+            int handle = writeRegion(region);
+            writeState(handle, state);
+            append();
+        } catch (IOException | GeneralSecurityException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    void stateChanged(@NonNull Region region, @NonNull RegionMonitoringState state) {
+        if (mStale || !canAppend()) {
+            mStale = true;
+            return;
+        }
+        try {
+            mBuffer.reset();
+            Integer handle = mHandles.get(region);
+            if (handle == null) {
+                handle = writeRegion(region);
+            }
+            writeState(handle, state);
+            append();
+        } catch (IOException | GeneralSecurityException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    void regionRemoved(@NonNull Region region) {
+        if (mStale || !canAppend()) {
+            mStale = true;
+            return;
+        }
+        Integer handle = mHandles.remove(region);
+        if (handle == null) {
+            return;
+        }
+        try {
+            mBuffer.reset();
+            writeRemove(handle);
+            append();
+        } catch (IOException | GeneralSecurityException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    /**
+     * Rewrites the file with the current state of every region, replacing it only once the new
+     * one is complete
+     */
+    void compact(@NonNull Map<Region, RegionMonitoringState> states) {
+        mHandles.clear();
+        mNextHandle = 0;
+        mStale = true;
+        String tempPath = mPath + ".tmp";
+        try {
+            mBuffer.reset();
+            mOutput.writeInt(MAGIC);
+            for (Map.Entry<Region, RegionMonitoringState> entry : states.entrySet()) {
+                writeState(writeRegion(entry.getKey()), entry.getValue());
+            }
+            mOutput.flush();
+            IoFileConfiguration.getIoFileStrategy().write(mBuffer.toByteArray(), tempPath, false);
+            // Renaming moves the bytes written by the strategy as they are
+            if (!new File(tempPath).renameTo(getFile())) {
+                throw new IOException("Cannot rename temp file.");
+            }
+            mAppendedRecords = 0;
+            mStale = false;
+            LogManager.d(TAG, "Compacted region state journal to %s regions", states.size());
+        } catch (IOException | GeneralSecurityException e) {
+            mHandles.clear();
+            LogManager.e(e, TAG, "Error while saving monitored region states to file");
+        }
+        mBuffer.reset();
+    }
+
+    /**
+     * Replays the file.  A truncated or corrupted record ends the replay, keeping the states read
+     * until then.
+     *
+     * @return the regions and their states, or null if there is no journal file
+     */
+    @Nullable
+    Map<Region, RegionMonitoringState> read() throws IOException {
+        if (!getFile().exists()) {
+            return null;
+        }
+        Map<Integer, Region> regions = new HashMap<>();
+        Map<Region, RegionMonitoringState> states = new LinkedHashMap<>();
+        InputStream stream = IoFileConfiguration.getIoFileStrategy().read(mPath);
+        if (stream == null) {
+            return null;
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        try {
+            if (input.readInt() != MAGIC) {
+                LogManager.w(TAG, "Ignoring region state journal with unknown format");
+                return states;
+            }
+            while (true) {
+                byte type;
+                try {
+                    type = input.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int handle = input.readInt();
+                if (type == RECORD_REGION) {
+                    Region region = readRegion(input);
+                    states.remove(region);
+                    states.put(region, new RegionMonitoringState(new Callback(null)));
+                    regions.put(handle, region);
+                } else if (type == RECORD_STATE) {
+                    boolean inside = input.readBoolean();
+                    long lastSeenTime = input.readLong();
+                    Region region = regions.get(handle);
+                    RegionMonitoringState state = region == null ? null : states.get(region);
+                    if (state != null) {
+                        state.restore(inside, lastSeenTime);
+                    }
+                } else if (type == RECORD_REMOVE) {
+                    Region region = regions.remove(handle);
+                    if (region != null) {
+                        states.remove(region);
+                    }
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LogManager.w(TAG, "Region state journal ends with an unreadable record: %s", e.getMessage());
+        } finally {
+            input.close();
+        }
+        return states;
+    }
+
+    void delete() {
+        mHandles.clear();
+        mAppendedRecords = 0;
+        mStale = true;
+        File file = getFile();
+        if (file.exists() && !file.delete()) {
+            LogManager.e(TAG, "Cannot delete existing file.");
+        }
+    }
+
+    private int writeRegion(@NonNull Region region) throws IOException {
+        int handle = mNextHandle++;
+        mHandles.put(region, handle);
+        mOutput.writeByte(RECORD_REGION);
+        mOutput.writeInt(handle);
+        mOutput.writeUTF(region.getUniqueId());
+        String bluetoothAddress = region.getBluetoothAddress();
+        mOutput.writeBoolean(bluetoothAddress != null);
+        if (bluetoothAddress != null) {
+            mOutput.writeUTF(bluetoothAddress);
+        }
+        mOutput.writeShort(region.getIdentifierCount());
+        for (int i = 0; i < region.getIdentifierCount(); i++) {
+            Identifier identifier = region.getIdentifier(i);
+            if (identifier == null) {
+                mOutput.writeShort(-1);
+            } else {
+                byte[] bytes = identifier.toByteArray();
+                mOutput.writeShort(bytes.length);
+                mOutput.write(bytes);
+            }
+        }
+        mAppendedRecords++;
+        return handle;
+    }
+
+    private void writeState(int handle, @NonNull RegionMonitoringState state) throws IOException {
+        mOutput.writeByte(RECORD_STATE);
+        mOutput.writeInt(handle);
+        mOutput.writeBoolean(state.getInside());
+        mOutput.writeLong(state.getLastSeenTime());
+        mAppendedRecords++;
+    }
+
+    private void writeRemove(int handle) throws IOException {
+        mOutput.writeByte(RECORD_REMOVE);
+        mOutput.writeInt(handle);
+        mAppendedRecords++;
+    }
+
+    private static boolean canAppend() {
+        return IoFileConfiguration.getIoFileStrategy() instanceof DefaultIoFileStrategy;
+    }
+
+    private void append() throws IOException, GeneralSecurityException {
+        mOutput.flush();
+        IoFileConfiguration.getIoFileStrategy().write(mBuffer.toByteArray(), mPath, true);
+        mBuffer.reset();
+    }
+
+    private void onAppendFailed(@NonNull Exception e) {
+        mBuffer.reset();
+        mStale = true;
+        LogManager.e(e, TAG, "Error while appending monitored region state to file");
+    }
+
+    @NonNull
+    private static Region readRegion(@NonNull DataInputStream input) throws IOException {
+        String uniqueId = input.readUTF();
+        String bluetoothAddress = input.readBoolean() ? input.readUTF() : null;
+        int identifierCount = input.readShort();
+        List<Identifier> identifiers = new ArrayList<>(identifierCount);
+        for (int i = 0; i < identifierCount; i++) {
+            int length = input.readShort();
+            if (length < 0) {
+                identifiers.add(null);
+            } else {
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                identifiers.add(Identifier.fromBytes(bytes, 0, length, false));
+            }
+        }
+        return new Region(uniqueId, identifiers, bluetoothAddress);
+    }
+}
@@ -25,10 +25,38 @@ public interface RssiFilter {
 
     public void addMeasurement(@NonNull Integer rssi);
 
+    /**
+     * Adds a measurement received at the given time, as measurements of a scan cycle are only
+     * added at its end.  Filters accounting for the age of measurements override it, others add
+     * it as if it was received now.
+     *
+     * @param timestamp time the measurement was received, as given by
+     *                  <code>SystemClock.elapsedRealtime()</code>
+     */
+    default void addMeasurement(@NonNull Integer rssi, long timestamp) {
+        addMeasurement(rssi);
+    }
+
     public boolean noMeasurementsAvailable();
 
     public double calculateRssi();
 
     public int getMeasurementCount();
 
+    /**
+     * Creates the filter of each beacon ranged in a region.  Set with
+     * <code>BeaconManager.setRssiFilterFactory</code>, for all regions or for one region.
+     */
+    interface Factory {
+        /**
+         * Called the first time a beacon is seen in a region, when the beacons added during a
+         * scan cycle are folded into the ranged beacons at its end.  It is called on the thread
+         * ending the cycle, with the monitor of the range state of the region held, so it must
+         * not block: it would delay the ranging results of every region.
+         *
+         * @return a new filter
+         */
+        @NonNull
+        RssiFilter create();
+    }
 }
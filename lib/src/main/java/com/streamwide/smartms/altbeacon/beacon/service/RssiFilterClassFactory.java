@@ -0,0 +1,71 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates filters of a class set with <code>BeaconManager.setRssiFilterImplClass</code>, through
+ * its public no argument constructor.  The constructor is looked up once, rather than for each
+ * filter created.
+ */
+public final class RssiFilterClassFactory implements RssiFilter.Factory {
+    @NonNull
+    private final Class<?> mFilterClass;
+    @Nullable
+    private final Constructor<?> mConstructor;
+
+    public RssiFilterClassFactory(@NonNull Class<?> filterClass) {
+        mFilterClass = filterClass;
+        Constructor<?> constructor = null;
+        if (RssiFilter.class.isAssignableFrom(filterClass)) {
+            try {
+                constructor = filterClass.getConstructor();
+            } catch (NoSuchMethodException e) {
+                // Reported by create()
+            }
+        }
+        mConstructor = constructor;
+    }
+
+    /**
+     * @throws IllegalStateException if the class is not an RssiFilter with a public no argument
+     *                               constructor, or if the constructor fails
+     */
+    @NonNull
+    @Override
+    public RssiFilter create() {
+        if (mConstructor == null) {
+            throw new IllegalStateException(mFilterClass.getName()
+                    + " is not an RssiFilter with a public no argument constructor");
+        }
+        try {
+            return (RssiFilter) mConstructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not construct " + mFilterClass.getName(), e);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "RssiFilterClassFactory(" + mFilterClass.getName() + ")";
+    }
+}
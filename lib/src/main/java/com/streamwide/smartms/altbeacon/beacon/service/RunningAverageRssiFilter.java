@@ -22,45 +22,91 @@ import androidx.annotation.RestrictTo;
 
 import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 
 /**
  * Calculate a RSSI value on base of an arbitrary list of measured RSSI values
  * The list is clipped by a certain length at start and end and the average
  * is calculate by simple arithmetic average
+ * <p>
+ * Measurements are kept in a ring buffer of primitive values, in the order they were added, so
+ * that they expire from the oldest one.  They are also counted in a histogram over the range of
+ * RSSI values, from which the clipped average is read without sorting.
  */
 public class RunningAverageRssiFilter implements RssiFilter {
 
     private static final String TAG = "RunningAverageRssiFilter";
     public static final long DEFAULT_SAMPLE_EXPIRATION_MILLISECONDS = 20000; /* 20 seconds */
     private static long sampleExpirationMilliseconds = DEFAULT_SAMPLE_EXPIRATION_MILLISECONDS;
-    private ArrayList<Measurement> mMeasurements = new ArrayList<Measurement>();
+    private static final int INITIAL_CAPACITY = 16;
+    // Range of RSSI values counted in the histogram.  Values outside of it are averaged by sorting
+    private static final int MIN_HISTOGRAM_RSSI = -128;
+    private static final int MAX_HISTOGRAM_RSSI = 127;
+
+    // 0 to follow the value set with setSampleExpirationMilliseconds
+    private final long mSampleExpirationMilliseconds;
+    // Measurements from the oldest one at mOldest, in a ring grown when full
+    @NonNull
+    private int[] mRssis = new int[INITIAL_CAPACITY];
+    @NonNull
+    private long[] mTimestamps = new long[INITIAL_CAPACITY];
+    private int mOldest = 0;
+    private int mSize = 0;
+    @NonNull
+    private final int[] mHistogram = new int[MAX_HISTOGRAM_RSSI - MIN_HISTOGRAM_RSSI + 1];
+    // Number of measurements outside of the range of the histogram
+    private int mOutOfHistogramCount = 0;
+
+    public RunningAverageRssiFilter() {
+        mSampleExpirationMilliseconds = 0;
+    }
+
+    /**
+     * @param sampleExpirationMilliseconds time after which a measurement is no longer averaged
+     */
+    public RunningAverageRssiFilter(long sampleExpirationMilliseconds) {
+        if (sampleExpirationMilliseconds <= 0) {
+            throw new IllegalArgumentException("Sample expiration must be > 0.");
+        }
+        mSampleExpirationMilliseconds = sampleExpirationMilliseconds;
+    }
 
     @Override
     public void addMeasurement(@NonNull Integer rssi) {
-        Measurement measurement = new Measurement();
-        measurement.rssi = rssi;
-        measurement.timestamp = SystemClock.elapsedRealtime();
-        mMeasurements.add(measurement);
+        addMeasurement(rssi, SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public synchronized void addMeasurement(@NonNull Integer rssi, long timestamp) {
+        if (mSize == mRssis.length) {
+            grow();
+        }
+        int index = (mOldest + mSize) % mRssis.length;
+        mRssis[index] = rssi;
+        mTimestamps[index] = timestamp;
+        mSize++;
+        if (rssi >= MIN_HISTOGRAM_RSSI && rssi <= MAX_HISTOGRAM_RSSI) {
+            mHistogram[rssi - MIN_HISTOGRAM_RSSI]++;
+        } else {
+            mOutOfHistogramCount++;
+        }
     }
 
     @Override
-    public boolean noMeasurementsAvailable() {
-        return mMeasurements.size() == 0;
+    public synchronized boolean noMeasurementsAvailable() {
+        return mSize == 0;
     }
 
 
     @Override
-    public int getMeasurementCount() {
-        return mMeasurements.size();
+    public synchronized int getMeasurementCount() {
+        return mSize;
     }
 
     @Override
-    public double calculateRssi() {
+    public synchronized double calculateRssi() {
         refreshMeasurements();
-        int size = mMeasurements.size();
+        int size = mSize;
         int startIndex = 0;
         int endIndex = size - 1;
         if (size > 2) {
@@ -68,9 +114,11 @@ public class RunningAverageRssiFilter implements RssiFilter {
             endIndex = size - size / 10 - 2;
         }
 
-        double sum = 0;
-        for (int i = startIndex; i <= endIndex; i++) {
-            sum += mMeasurements.get(i).rssi;
+        double sum;
+        if (mOutOfHistogramCount == 0) {
+            sum = sumFromHistogram(startIndex, endIndex);
+        } else {
+            sum = sumBySorting(startIndex, endIndex);
         }
         double runningAverage = sum / (endIndex - startIndex + 1);
 
@@ -79,27 +127,70 @@ public class RunningAverageRssiFilter implements RssiFilter {
         return runningAverage;
     }
 
-    private synchronized void refreshMeasurements() {
-        ArrayList<Measurement> newMeasurements = new ArrayList<Measurement>();
-        Iterator<Measurement> iterator = mMeasurements.iterator();
-        while (iterator.hasNext()) {
-            Measurement measurement = iterator.next();
-            if (SystemClock.elapsedRealtime() - measurement.timestamp < sampleExpirationMilliseconds) {
-                newMeasurements.add(measurement);
+    /**
+     * @return the sum of the measurements from startIndex to endIndex in ascending order
+     */
+    private long sumFromHistogram(int startIndex, int endIndex) {
+        long sum = 0;
+        int toSkip = startIndex;
+        int toSum = endIndex - startIndex + 1;
+        for (int bin = 0; bin < mHistogram.length && toSum > 0; bin++) {
+            int count = mHistogram[bin];
+            if (toSkip >= count) {
+                toSkip -= count;
+                continue;
             }
+            int summed = Math.min(count - toSkip, toSum);
+            sum += (long) summed * (bin + MIN_HISTOGRAM_RSSI);
+            toSum -= summed;
+            toSkip = 0;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum of the measurements from startIndex to endIndex in ascending order
+     */
+    private long sumBySorting(int startIndex, int endIndex) {
+        int[] sorted = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            sorted[i] = mRssis[(mOldest + i) % mRssis.length];
+        }
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (int i = startIndex; i <= endIndex; i++) {
+            sum += sorted[i];
         }
-        mMeasurements = newMeasurements;
-        Collections.sort(mMeasurements);
+        return sum;
     }
 
-    protected class Measurement implements Comparable<Measurement> {
-        Integer rssi;
-        long timestamp;
+    private void refreshMeasurements() {
+        long sampleExpirationMilliseconds = mSampleExpirationMilliseconds > 0
+                ? mSampleExpirationMilliseconds : RunningAverageRssiFilter.sampleExpirationMilliseconds;
+        long now = SystemClock.elapsedRealtime();
+        while (mSize > 0 && now - mTimestamps[mOldest] >= sampleExpirationMilliseconds) {
+            int rssi = mRssis[mOldest];
+            if (rssi >= MIN_HISTOGRAM_RSSI && rssi <= MAX_HISTOGRAM_RSSI) {
+                mHistogram[rssi - MIN_HISTOGRAM_RSSI]--;
+            } else {
+                mOutOfHistogramCount--;
+            }
+            mOldest = (mOldest + 1) % mRssis.length;
+            mSize--;
+        }
+    }
 
-        @Override
-        public int compareTo(Measurement arg0) {
-            return rssi.compareTo(arg0.rssi);
+    private void grow() {
+        int[] rssis = new int[mRssis.length * 2];
+        long[] timestamps = new long[rssis.length];
+        for (int i = 0; i < mSize; i++) {
+            int index = (mOldest + i) % mRssis.length;
+            rssis[i] = mRssis[index];
+            timestamps[i] = mTimestamps[index];
         }
+        mRssis = rssis;
+        mTimestamps = timestamps;
+        mOldest = 0;
     }
 
     public static void setSampleExpirationMilliseconds(long newSampleExpirationMilliseconds) {
@@ -110,4 +201,38 @@ public class RunningAverageRssiFilter implements RssiFilter {
     static long getSampleExpirationMilliseconds() {
         return sampleExpirationMilliseconds;
     }
+
+    /**
+     * Creates running average filters, optionally with their own sample expiration so that
+     * regions may use differently tuned filters
+     */
+    public static class Factory implements RssiFilter.Factory {
+        private final long mSampleExpirationMilliseconds;
+
+        /**
+         * Creates filters following the value set with
+         * {@link RunningAverageRssiFilter#setSampleExpirationMilliseconds(long)}
+         */
+        public Factory() {
+            mSampleExpirationMilliseconds = 0;
+        }
+
+        /**
+         * @param sampleExpirationMilliseconds time after which a measurement is no longer averaged
+         */
+        public Factory(long sampleExpirationMilliseconds) {
+            if (sampleExpirationMilliseconds <= 0) {
+                throw new IllegalArgumentException("Sample expiration must be > 0.");
+            }
+            mSampleExpirationMilliseconds = sampleExpirationMilliseconds;
+        }
+
+        @NonNull
+        @Override
+        public RssiFilter create() {
+            return mSampleExpirationMilliseconds > 0
+                    ? new RunningAverageRssiFilter(mSampleExpirationMilliseconds)
+                    : new RunningAverageRssiFilter();
+        }
+    }
 }
@@ -21,9 +21,8 @@ import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
-import android.os.AsyncTask;
+import android.os.SystemClock;
 
-import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
@@ -37,24 +36,21 @@ import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
 import com.streamwide.smartms.altbeacon.beacon.service.scanner.CycledLeScanCallback;
 import com.streamwide.smartms.altbeacon.beacon.service.scanner.CycledLeScanner;
 import com.streamwide.smartms.altbeacon.beacon.service.scanner.DistinctPacketDetector;
+import com.streamwide.smartms.altbeacon.beacon.service.scanner.DuplicatePacketSuppressor;
 import com.streamwide.smartms.altbeacon.beacon.service.scanner.NonBeaconLeScanCallback;
+import com.streamwide.smartms.altbeacon.beacon.service.scanner.ScanBatch;
 import com.streamwide.smartms.altbeacon.beacon.startup.StartupBroadcastReceiver;
+import com.streamwide.smartms.altbeacon.bluetooth.BleAdvertisement;
 import com.streamwide.smartms.altbeacon.bluetooth.BluetoothCrashResolver;
 import com.streamwide.smartms.altbeacon.util.ScanHelperUtil;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 /**
  * Created by dyoung on 6/16/17.
@@ -69,20 +65,59 @@ import java.util.concurrent.TimeUnit;
 
 class ScanHelper {
     protected static final String TAG = ScanHelper.class.getSimpleName();
+    /**
+     * One pipeline per processing thread.  Packets are routed by device address, so that the
+     * packets of a device are processed in the order they were received.  Empty when packets are
+     * processed inline.
+     */
     @Nullable
-    private ExecutorService mExecutor;
+    private volatile ScanPipeline[] mScanPipelines;
+    // Set by terminateThreads(), after which pipelines are no longer created.  Guarded by this
+    private boolean mThreadsTerminated = false;
+    @NonNull
+    private final ScanResultConsumer mScanResultConsumer = new ScanResultConsumer(this);
     private BeaconManager mBeaconManager;
     @Nullable
     protected CycledLeScanner mCycledScanner;
     protected MonitoringStatus mMonitoringStatus;
-    private final Map<Region, RangeState> mRangedRegionState = new HashMap<>();
-    protected DistinctPacketDetector mDistinctPacketDetector = new DistinctPacketDetector();
+    private final Map<Region, RangeState> mRangedRegionState = new RangedRegionMap();
+    /**
+     * Index of mRangedRegionState read by the processing threads without locking.  Updated by
+     * every change to the map.
+     */
+    @NonNull
+    private final RegionIndex<RangeState> mRangedRegionIndex = new RegionIndex<>();
+    protected DistinctPacketDetector mDistinctPacketDetector = new DistinctPacketDetector(
+            BeaconManager.getDistinctPacketTrackingCapacity(),
+            BeaconManager.isDistinctPacketExactVerificationEnabled());
+    /**
+     * Drops copies of recently processed packets before they are parsed, or null if disabled
+     */
+    @Nullable
+    private final DuplicatePacketSuppressor mDuplicatePacketSuppressor =
+            BeaconManager.getDuplicatePacketSuppressionMillis() > 0
+                    ? new DuplicatePacketSuppressor(BeaconManager.getDuplicatePacketSuppressionMillis(),
+                    DuplicatePacketSuppressor.DEFAULT_CAPACITY)
+                    : null;
+    // Saturations of mDuplicatePacketSuppressor already added to ScanProcessingStats
+    private long mDuplicatePacketSaturations = 0;
 
     @NonNull
     private ExtraDataBeaconTracker mExtraDataBeaconTracker = new ExtraDataBeaconTracker();
 
     protected Set<BeaconParser> mBeaconParsers = new HashSet<>();
+    @NonNull
+    private volatile BeaconParserIndex mBeaconParserIndex = new BeaconParserIndex(mBeaconParsers);
     private List<Beacon> mSimulatedScanData = null;
+    /**
+     * One re-usable advertisement index per processing thread, shared by all parsers
+     */
+    private static final ThreadLocal<BleAdvertisement> sAdvertisement = new ThreadLocal<BleAdvertisement>() {
+        @Override
+        protected BleAdvertisement initialValue() {
+            return new BleAdvertisement();
+        }
+    };
     @NonNull
     protected Context mContext;
 
@@ -91,25 +126,53 @@ class ScanHelper {
         mBeaconManager = BeaconManager.getInstanceForApplication(context);
     }
 
-    private ExecutorService getExecutor() {
-        if (mExecutor == null) {
-            mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+    /**
+     * @return the pipelines, created the first time, or null once the threads were terminated
+     */
+    @Nullable
+    private ScanPipeline[] getScanPipelines() {
+        ScanPipeline[] pipelines = mScanPipelines;
+        if (pipelines == null) {
+            synchronized (this) {
+                pipelines = mScanPipelines;
+                if (pipelines == null && !mThreadsTerminated) {
+                    pipelines = createScanPipelines();
+                    mScanPipelines = pipelines;
+                }
+            }
+        }
+        return pipelines;
+    }
+
+    @NonNull
+    private ScanPipeline[] createScanPipelines() {
+        Executor executor = BeaconManager.getScanProcessingExecutor();
+        if (executor == BeaconManager.SCAN_PROCESSING_INLINE) {
+            return new ScanPipeline[0];
+        }
+        int shardCount = BeaconManager.getScanProcessingThreadCount();
+        int shardCapacity = (BeaconManager.getScanQueueCapacity() + shardCount - 1) / shardCount;
+        ScanOverflowPolicy overflowPolicy = BeaconManager.getScanOverflowPolicy();
+        ScanPipeline[] pipelines = new ScanPipeline[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            pipelines[i] = executor == null
+                    ? new ScanPipeline("ScanPipeline-" + i, shardCapacity, 1, overflowPolicy, mScanResultConsumer)
+                    : new ScanPipeline(shardCapacity, executor, overflowPolicy, mScanResultConsumer);
         }
-        return mExecutor;
+        return pipelines;
     }
 
     void terminateThreads() {
-        if (mExecutor != null) {
-            mExecutor.shutdown();
-            try {
-                if (!mExecutor.awaitTermination(10, TimeUnit.MILLISECONDS)) {
-                    LogManager.e(TAG, "Can't stop beacon parsing thread.");
-                }
-            } catch (InterruptedException e) {
-                LogManager.e(TAG, "Interrupted waiting to stop beacon parsing thread.", e);
-                Thread.currentThread().interrupt();
+        ScanPipeline[] pipelines;
+        synchronized (this) {
+            pipelines = mScanPipelines;
+            mScanPipelines = null;
+            mThreadsTerminated = true;
+        }
+        if (pipelines != null) {
+            for (ScanPipeline pipeline : pipelines) {
+                pipeline.shutdown();
             }
-            mExecutor = null;
         }
     }
 
@@ -149,6 +212,7 @@ class ScanHelper {
 
     void setBeaconParsers(Set<BeaconParser> beaconParsers) {
         mBeaconParsers = beaconParsers;
+        mBeaconParserIndex = new BeaconParserIndex(beaconParsers);
     }
 
     void setSimulatedScanData(List<Beacon> simulatedScanData) {
@@ -163,18 +227,69 @@ class ScanHelper {
     }
 
     void processScanResult(BluetoothDevice device, int rssi, byte[] scanRecord, long timestampMs) {
-        NonBeaconLeScanCallback nonBeaconLeScanCallback = mBeaconManager.getNonBeaconLeScanCallback();
-
         try {
-            new ScanProcessor(this, nonBeaconLeScanCallback).executeOnExecutor(getExecutor(),
-                    new ScanData(device, rssi, scanRecord, timestampMs));
-        } catch (RejectedExecutionException e) {
-            LogManager.w(TAG, "Ignoring scan result because we cannot keep up.");
+            ScanPipeline[] pipelines = getScanPipelines();
+            if (pipelines == null) {
+                LogManager.d(TAG, "Ignoring scan result received after scanning was stopped.");
+                return;
+            }
+            if (pipelines.length == 0) {
+                ScanPipeline.process(mScanResultConsumer, device, rssi, scanRecord, timestampMs);
+                return;
+            }
+            if (!pipelines[shardOf(device, pipelines.length)].offer(device, rssi, scanRecord, timestampMs)) {
+                LogManager.w(TAG, "Ignoring scan result because we cannot keep up.");
+            }
         } catch (OutOfMemoryError e) {
             LogManager.w(TAG, "Ignoring scan result because we cannot start a thread to keep up.");
         }
     }
 
+    void processScanBatch(@NonNull ScanBatch batch) {
+        try {
+            ScanPipeline[] pipelines = getScanPipelines();
+            if (pipelines == null) {
+                LogManager.d(TAG, "Ignoring scan result received after scanning was stopped.");
+                return;
+            }
+            if (pipelines.length == 0) {
+                for (int i = 0; i < batch.size(); i++) {
+                    ScanPipeline.process(mScanResultConsumer, batch.getDevice(i), batch.getRssi(i),
+                            batch.getScanRecord(i), batch.getTimestampMs(i));
+                }
+                return;
+            }
+            // Queue the whole batch, then wake up each pipeline that received packets only once.
+            // Beyond 64 pipelines, bits are shared, which only causes spurious wake-ups.
+            long signalMask = 0;
+            int dropped = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                BluetoothDevice device = batch.getDevice(i);
+                int shard = shardOf(device, pipelines.length);
+                if (pipelines[shard].offer(device, batch.getRssi(i), batch.getScanRecord(i), batch.getTimestampMs(i), false)) {
+                    signalMask |= 1L << shard;
+                } else {
+                    dropped++;
+                }
+            }
+            for (int shard = 0; shard < pipelines.length; shard++) {
+                if ((signalMask & (1L << shard)) != 0) {
+                    pipelines[shard].signal();
+                }
+            }
+            if (dropped > 0) {
+                LogManager.w(TAG, "Ignoring %s scan results because we cannot keep up.", dropped);
+            }
+        } catch (OutOfMemoryError e) {
+            LogManager.w(TAG, "Ignoring scan results because we cannot start a thread to keep up.");
+        }
+    }
+
+    private static int shardOf(@NonNull BluetoothDevice device, int shardCount) {
+        int hash = device.getAddress().hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shardCount;
+    }
+
     void reloadParsers() {
         HashSet<BeaconParser> newBeaconParsers = new HashSet<>();
         //flatMap all beacon parsers
@@ -187,6 +302,7 @@ class ScanHelper {
             }
         }
         mBeaconParsers = newBeaconParsers;
+        mBeaconParserIndex = new BeaconParserIndex(newBeaconParsers);
         //initialize the extra data beacon tracker
         mExtraDataBeaconTracker = new ExtraDataBeaconTracker(matchBeaconsByServiceUUID);
     }
@@ -208,13 +324,16 @@ class ScanHelper {
 
     private final CycledLeScanCallback mCycledLeScanCallback = new CycledLeScanCallback() {
         @Override
-        @MainThread
         public void onLeScan(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
             processScanResult(device, rssi, scanRecord, timestampMs);
         }
 
         @Override
-        @MainThread
+        public void onLeScanBatch(@NonNull ScanBatch batch) {
+            processScanBatch(batch);
+        }
+
+        @Override
         @SuppressLint("WrongThread")
         public void onCycleEnd() {
             if (BeaconManager.getBeaconSimulator() != null) {
@@ -241,7 +360,18 @@ class ScanHelper {
                     LogManager.d(TAG, "Beacon simulator not enabled");
                 }
             }
+            if (mCycledScanner != null) {
+                ScanProcessingStats.getInstance().recordScanCycle(mCycledScanner.getLastCycleMainThreadNanos());
+            }
+            ScanProcessingStats.getInstance().recordDistinctPacketSaturations(
+                    mDistinctPacketDetector.getSaturationCount());
             mDistinctPacketDetector.clearDetections();
+            if (mDuplicatePacketSuppressor != null) {
+                long saturations = mDuplicatePacketSuppressor.getSaturationCount();
+                ScanProcessingStats.getInstance().recordDuplicatePacketSaturations(
+                        saturations - mDuplicatePacketSaturations);
+                mDuplicatePacketSaturations = saturations;
+            }
             mMonitoringStatus.updateNewlyOutside(mContext);
             processRangeData();
         }
@@ -263,7 +393,7 @@ class ScanHelper {
     }
 
     /**
-     * Helper for processing BLE beacons. This has been extracted from {@link ScanProcessor} to
+     * Helper for processing BLE beacons. This has been extracted from {@link ScanResultConsumer} to
      * support simulated scan data for test and debug environments.
      * <p>
      * Processing beacons is a frequent and expensive operation. It should not be run on the main
@@ -291,131 +421,133 @@ class ScanHelper {
 
             mMonitoringStatus.updateNewlyInsideInRegionsContaining(mContext, beacon);
 
-            List<Region> matchedRegions;
-            Iterator<Region> matchedRegionIterator;
             LogManager.d(TAG, "looking for ranging region matches for this beacon");
-            synchronized (mRangedRegionState) {
-                matchedRegions = matchingRegions(beacon, mRangedRegionState.keySet());
-                matchedRegionIterator = matchedRegions.iterator();
-                while (matchedRegionIterator.hasNext()) {
-                    Region region = matchedRegionIterator.next();
-                    LogManager.d(TAG, "matches ranging region: %s", region);
-                    RangeState rangeState = mRangedRegionState.get(region);
-                    if (rangeState != null) {
-                        rangeState.addBeacon(beacon);
-                    }
-                }
+            for (RegionIndex.Entry<RangeState> entry : mRangedRegionIndex.match(beacon)) {
+                LogManager.d(TAG, "matches ranging region: %s", entry.region);
+                entry.value.addBeacon(beacon);
             }
         }
     }
 
     /**
-     * <strong>This class is not thread safe.</strong>
+     * Runs the candidate parsers of the dispatch index over the advertisement, in order, until one
+     * of them decodes a beacon.
      */
-    private class ScanData {
-        ScanData(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
-            this.device = device;
-            this.rssi = rssi;
-            this.scanRecord = scanRecord;
-            this.timestampMs = timestampMs;
+    @Nullable
+    @WorkerThread
+    private Beacon parseAdvertisement(@NonNull BleAdvertisement advertisement, int rssi,
+                                      @NonNull BluetoothDevice device, long timestampMs) {
+        BeaconParserIndex parserIndex = mBeaconParserIndex;
+        Beacon beacon = null;
+        if (!parserIndex.isIndexed()) {
+            ScanProcessingStats.getInstance().recordPacketDispatched();
+            for (int i = 0; i < parserIndex.size() && beacon == null; i++) {
+                beacon = parserIndex.getParser(i).fromAdvertisement(advertisement, rssi, device, timestampMs);
+            }
+            return beacon;
         }
-
-        final int rssi;
-
-        @NonNull
-        BluetoothDevice device;
-
-        @NonNull
-        byte[] scanRecord;
-
-        long timestampMs;
+        long candidates = parserIndex.candidates(advertisement);
+        if (candidates == 0L) {
+            ScanProcessingStats.getInstance().recordPacketRejectedByDispatch();
+            return null;
+        }
+        ScanProcessingStats.getInstance().recordPacketDispatched();
+        while (candidates != 0L && beacon == null) {
+            int ordinal = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            beacon = parserIndex.getParser(ordinal).fromAdvertisement(advertisement, rssi, device, timestampMs);
+        }
+        return beacon;
     }
 
-    private static class ScanProcessor extends AsyncTask<ScanData, Void, Void> {
+    /**
+     * Parses the packets taken out of the scan pipeline, and feeds the beacons found into the
+     * ranging and monitoring state.
+     */
+    private static class ScanResultConsumer implements ScanPipeline.Consumer {
 
         final DetectionTracker mDetectionTracker = DetectionTracker.getInstance();
         private final WeakReference<ScanHelper> mReference;
 
-        private final NonBeaconLeScanCallback mNonBeaconLeScanCallback;
-
-        ScanProcessor(@NonNull ScanHelper reference, NonBeaconLeScanCallback nonBeaconLeScanCallback) {
-            mNonBeaconLeScanCallback = nonBeaconLeScanCallback;
+        ScanResultConsumer(@NonNull ScanHelper reference) {
             this.mReference = new WeakReference<>(reference);
         }
 
-        @NonNull
-        protected ScanHelper getReference() {
-            return mReference.get();
-        }
-
         @WorkerThread
         @Override
-        protected Void doInBackground(ScanData... params) {
-
-            if (null == getReference()) {
-                return null;
+        public void onScanResult(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
+            ScanHelper scanHelper = mReference.get();
+            if (null == scanHelper) {
+                return;
             }
-            ScanData scanData = params[0];
             Beacon beacon = null;
 
-            for (BeaconParser parser : getReference().mBeaconParsers) {
-                beacon = parser.fromScanData(scanData.scanRecord, scanData.rssi, scanData.device, scanData.timestampMs);
-
-                if (beacon != null) {
-                    break;
+            if (scanHelper.mCycledScanner != null && !scanHelper.mCycledScanner.getDistinctPacketsDetectedPerScan()) {
+                if (!scanHelper.mDistinctPacketDetector.isPacketDistinct(device.getAddress(),
+                        scanRecord)) {
+                    LogManager.i(TAG, "Non-distinct packets detected in a single scan.  Restarting scans unecessary.");
+                    scanHelper.mCycledScanner.setDistinctPacketsDetectedPerScan(true);
                 }
             }
+            DuplicatePacketSuppressor duplicatePacketSuppressor = scanHelper.mDuplicatePacketSuppressor;
+            if (duplicatePacketSuppressor != null
+                    && duplicatePacketSuppressor.isDuplicate(device.getAddress(), scanRecord, SystemClock.elapsedRealtime())) {
+                ScanProcessingStats.getInstance().recordPacketSuppressed();
+                return;
+            }
+
+            // Index the PDUs of this packet once, and let every parser read the same index
+            BleAdvertisement advertisement = sAdvertisement.get().reset(scanRecord);
+            beacon = scanHelper.parseAdvertisement(advertisement, rssi, device, timestampMs);
+            advertisement.reset(null);
             if (beacon != null) {
                 if (LogManager.isVerboseLoggingEnabled()) {
                     LogManager.d(TAG, "Beacon packet detected for: " + beacon + " with rssi " + beacon.getRssi());
                 }
                 mDetectionTracker.recordDetection();
-                if (getReference().mCycledScanner != null && !getReference().mCycledScanner.getDistinctPacketsDetectedPerScan()) {
-                    if (!getReference().mDistinctPacketDetector.isPacketDistinct(scanData.device.getAddress(),
-                            scanData.scanRecord)) {
-                        LogManager.i(TAG, "Non-distinct packets detected in a single scan.  Restarting scans unecessary.");
-                        getReference().mCycledScanner.setDistinctPacketsDetectedPerScan(true);
-                    }
-                }
-                getReference().processBeaconFromScan(beacon);
+                scanHelper.processBeaconFromScan(beacon);
             } else {
-                if (mNonBeaconLeScanCallback != null) {
-                    mNonBeaconLeScanCallback.onNonBeaconLeScan(scanData.device, scanData.rssi, scanData.scanRecord);
+                NonBeaconLeScanCallback nonBeaconLeScanCallback = scanHelper.mBeaconManager.getNonBeaconLeScanCallback();
+                if (nonBeaconLeScanCallback != null) {
+                    nonBeaconLeScanCallback.onNonBeaconLeScan(device, rssi, scanRecord);
                 }
             }
-            return null;
         }
+    }
 
+    /**
+     * Map of the ranged regions which keeps the index read by the processing threads up to date.
+     * Callers modifying it synchronize on it.
+     */
+    private class RangedRegionMap extends HashMap<Region, RangeState> {
         @Override
-        protected void onPostExecute(Void result) {
-            //Nothing to do ...
+        public RangeState put(Region key, RangeState value) {
+            RangeState previous = super.put(key, value);
+            mRangedRegionIndex.put(key, value);
+            return previous;
         }
 
         @Override
-        protected void onPreExecute() {
-            //Nothing to do ...
+        public void putAll(Map<? extends Region, ? extends RangeState> map) {
+            super.putAll(map);
+            for (Map.Entry<? extends Region, ? extends RangeState> entry : map.entrySet()) {
+                mRangedRegionIndex.put(entry.getKey(), entry.getValue());
+            }
         }
 
         @Override
-        protected void onProgressUpdate(Void... values) {
-            //Nothing to do ...
+        public RangeState remove(Object key) {
+            RangeState previous = super.remove(key);
+            if (key instanceof Region) {
+                mRangedRegionIndex.remove((Region) key);
+            }
+            return previous;
         }
-    }
 
-    private List<Region> matchingRegions(Beacon beacon, Collection<Region> regions) {
-        List<Region> matched = new ArrayList<>();
-        for (Region region : regions) {
-            // Need to check if region is null in case it was removed from the collection by
-            // another thread during iteration
-            if (region != null) {
-                if (region.matchesBeacon(beacon)) {
-                    matched.add(region);
-                } else {
-                    LogManager.d(TAG, "This region (%s) does not match beacon: %s", region, beacon);
-                }
-            }
+        @Override
+        public void clear() {
+            super.clear();
+            mRangedRegionIndex.clear();
         }
-        return matched;
     }
-
 }
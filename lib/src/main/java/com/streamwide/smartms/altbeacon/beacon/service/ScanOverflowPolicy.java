@@ -0,0 +1,36 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+/**
+ * What to do with a scanned packet when the queue of packets waiting to be processed is full.
+ */
+public enum ScanOverflowPolicy {
+    /**
+     * Discard the incoming packet
+     */
+    DROP_NEWEST,
+    /**
+     * Discard the oldest waiting packet to make room for the incoming one
+     */
+    DROP_OLDEST,
+    /**
+     * Replace a waiting packet from the same device with the incoming one, or discard the incoming
+     * packet if none is waiting
+     */
+    COALESCE_BY_MAC
+}
@@ -0,0 +1,403 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import android.bluetooth.BluetoothDevice;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.streamwide.smartms.altbeacon.beacon.logging.LogManager;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of scanned packets, processed either by a fixed set of consumer threads owned by
+ * the pipeline, or by tasks submitted to an executor provided by the application.
+ * <p>
+ * Packets are stored in a ring of slots allocated once, so queueing a packet allocates nothing.
+ * Any number of threads may enqueue packets concurrently without locking.  When the ring is full,
+ * the {@link ScanOverflowPolicy} decides which packet is lost.
+ */
+final class ScanPipeline {
+    private static final String TAG = ScanPipeline.class.getSimpleName();
+    private static final long TERMINATION_TIMEOUT_MILLIS = 10;
+    private static final int MAX_DROP_OLDEST_ATTEMPTS = 16;
+
+    /**
+     * Processes the packets taken out of the queue
+     */
+    interface Consumer {
+        @WorkerThread
+        void onScanResult(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs);
+    }
+
+    private final int mMask;
+    private final BluetoothDevice[] mDevices;
+    private final int[] mRssis;
+    private final byte[][] mScanRecords;
+    private final long[] mTimestamps;
+    // Position at which each slot can next be written (== position) or read (== position + 1)
+    private final AtomicLongArray mSequences;
+    // Guards the contents of a queued slot while a packet is coalesced into it
+    private final AtomicIntegerArray mSlotLocks;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+    // Released once per queued packet, to wake up a waiting consumer thread
+    private final Semaphore mAvailable = new Semaphore(0);
+    // Set while a drain task is submitted to mExecutor or running, so that only one runs at a time
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    @NonNull
+    private final ScanOverflowPolicy mOverflowPolicy;
+    @NonNull
+    private final Consumer mConsumer;
+    @NonNull
+    private final Thread[] mThreads;
+    @Nullable
+    private final Executor mExecutor;
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private volatile boolean mShutdown = false;
+
+    /**
+     * Creates a pipeline processing packets on its own daemon threads, running at background
+     * priority.
+     *
+     * @param name          the name of the pipeline, from which its threads are named
+     * @param capacity      the number of packets that may wait to be processed, rounded up to a
+     *                      power of two
+     * @param consumerCount the number of threads processing packets
+     */
+    ScanPipeline(@NonNull String name, int capacity, int consumerCount, @NonNull ScanOverflowPolicy overflowPolicy, @NonNull Consumer consumer) {
+        this(name, capacity, consumerCount, null, overflowPolicy, consumer);
+    }
+
+    /**
+     * Creates a pipeline processing packets in tasks submitted to an executor.  At most one task
+     * of this pipeline is submitted at a time, so packets are processed in the order they were
+     * queued.
+     *
+     * @param capacity the number of packets that may wait to be processed, rounded up to a power
+     *                 of two
+     * @param executor the executor running the processing tasks, never shut down by the pipeline
+     */
+    ScanPipeline(int capacity, @NonNull Executor executor, @NonNull ScanOverflowPolicy overflowPolicy, @NonNull Consumer consumer) {
+        this(TAG, capacity, 0, executor, overflowPolicy, consumer);
+    }
+
+    private ScanPipeline(@NonNull String name, int capacity, int consumerCount, @Nullable Executor executor,
+                         @NonNull ScanOverflowPolicy overflowPolicy, @NonNull Consumer consumer) {
+        if (capacity < 1 || (executor == null && consumerCount < 1)) {
+            throw new IllegalArgumentException("Capacity and consumer count must be > 0.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mDevices = new BluetoothDevice[size];
+        mRssis = new int[size];
+        mScanRecords = new byte[size][];
+        mTimestamps = new long[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+        mSlotLocks = new AtomicIntegerArray(size);
+        mOverflowPolicy = overflowPolicy;
+        mConsumer = consumer;
+        mExecutor = executor;
+        mThreads = new Thread[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            mThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    consume();
+                }
+            }, name + "-" + i);
+            mThreads[i].setDaemon(true);
+            mThreads[i].start();
+        }
+    }
+
+    int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Queues a packet for processing, applying the overflow policy if the queue is full.
+     *
+     * @return false if the packet was discarded
+     */
+    boolean offer(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
+        return offer(device, rssi, scanRecord, timestampMs, true);
+    }
+
+    /**
+     * Queues a packet like {@link #offer(BluetoothDevice, int, byte[], long)}, optionally without
+     * waking up the consumers.  Used to queue several packets at once: the packets queued without
+     * signal are only guaranteed to be processed once {@link #signal()} is called.
+     *
+     * @return false if the packet was discarded
+     */
+    boolean offer(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs, boolean signal) {
+        ScanProcessingStats stats = ScanProcessingStats.getInstance();
+        if (mShutdown) {
+            stats.recordPacketDropped();
+            return false;
+        }
+        for (int attempt = 0; ; attempt++) {
+            if (enqueue(device, rssi, scanRecord, timestampMs)) {
+                stats.recordPacketEnqueued();
+                if (signal) {
+                    signal();
+                }
+                return true;
+            }
+            switch (mOverflowPolicy) {
+                case DROP_OLDEST:
+                    if (attempt < MAX_DROP_OLDEST_ATTEMPTS) {
+                        if (dequeue(false)) {
+                            stats.recordPacketDropped();
+                        }
+                        continue;
+                    }
+                    break;
+                case COALESCE_BY_MAC:
+                    if (coalesce(device, rssi, scanRecord, timestampMs)) {
+                        stats.recordPacketCoalesced();
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            stats.recordPacketDropped();
+            return false;
+        }
+    }
+
+    /**
+     * Wakes up the consumers to process the queued packets
+     */
+    void signal() {
+        if (mExecutor == null) {
+            mAvailable.release();
+        } else {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Stops accepting packets.  The packets already queued are still processed: the consumer
+     * threads exit once they are done, and the tasks already submitted to an executor run to
+     * completion.
+     */
+    void shutdown() {
+        mShutdown = true;
+        if (mExecutor != null) {
+            return;
+        }
+        // Wake up every consumer, so that each drains the queue and exits
+        mAvailable.release(mThreads.length);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TERMINATION_TIMEOUT_MILLIS);
+        try {
+            for (Thread thread : mThreads) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis > 0) {
+                    thread.join(remainingMillis);
+                }
+                if (thread.isAlive()) {
+                    LogManager.e(TAG, "Can't stop beacon parsing thread.");
+                }
+            }
+        } catch (InterruptedException e) {
+            LogManager.e(TAG, "Interrupted waiting to stop beacon parsing thread.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        // Permits only wake consumers up: the queue is always drained before waiting for one
+        while (true) {
+            if (dequeue(true)) {
+                continue;
+            }
+            if (mShutdown) {
+                return;
+            }
+            try {
+                mAvailable.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RejectedExecutionException e) {
+                // The packets stay queued until the next packet schedules a drain again
+                mDrainScheduled.set(false);
+                LogManager.w(TAG, "Scan processing executor rejected the processing of queued packets.");
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            while (dequeue(true)) {
+                // keep going until the queue is empty
+            }
+            mDrainScheduled.set(false);
+            // A packet published after the last dequeue, but before the flag was cleared, did not
+            // schedule a drain.  A packet published after this check will schedule its own.
+        } while (isHeadReady() && mDrainScheduled.compareAndSet(false, true));
+    }
+
+    private boolean isHeadReady() {
+        long position = mHead.get();
+        return mSequences.get((int) (position & mMask)) == position + 1;
+    }
+
+    private boolean enqueue(BluetoothDevice device, int rssi, byte[] scanRecord, long timestampMs) {
+        long position = mTail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mMask);
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mTail.get();
+            }
+        }
+        mDevices[index] = device;
+        mRssis[index] = rssi;
+        mScanRecords[index] = scanRecord;
+        mTimestamps[index] = timestampMs;
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest packet out of the queue, handing it to the consumer if process is set.
+     *
+     * @return false if the queue was empty
+     */
+    private boolean dequeue(boolean process) {
+        long position = mHead.get();
+        int index;
+        while (true) {
+            index = (int) (position & mMask);
+            long difference = mSequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (mHead.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = mHead.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mHead.get();
+            }
+        }
+        while (!mSlotLocks.compareAndSet(index, 0, 1)) {
+            Thread.yield();
+        }
+        BluetoothDevice device = mDevices[index];
+        int rssi = mRssis[index];
+        byte[] scanRecord = mScanRecords[index];
+        long timestampMs = mTimestamps[index];
+        mDevices[index] = null;
+        mScanRecords[index] = null;
+        mSlotLocks.set(index, 0);
+        mSequences.set(index, position + mMask + 1);
+
+        if (process) {
+            process(mConsumer, device, rssi, scanRecord, timestampMs);
+        }
+        return true;
+    }
+
+    /**
+     * Hands a packet to a consumer, without letting a failure to process it stop the calling
+     * thread.
+     */
+    static void process(@NonNull Consumer consumer, @NonNull BluetoothDevice device, int rssi,
+                        @NonNull byte[] scanRecord, long timestampMs) {
+        try {
+            consumer.onScanResult(device, rssi, scanRecord, timestampMs);
+        } catch (RuntimeException e) {
+            LogManager.e(e, TAG, "Failed to process scan result from %s", device.getAddress());
+        }
+        ScanProcessingStats.getInstance().recordPacketProcessed();
+    }
+
+    /**
+     * Overwrites a queued packet from the same device with a newer one.
+     *
+     * @return false if no packet from this device is queued
+     */
+    private boolean coalesce(BluetoothDevice device, int rssi, byte[] scanRecord, long timestampMs) {
+        String address = device.getAddress();
+        long tail = mTail.get();
+        for (long position = mHead.get(); position < tail; position++) {
+            int index = (int) (position & mMask);
+            if (mSequences.get(index) != position + 1 || !mSlotLocks.compareAndSet(index, 0, 1)) {
+                continue;
+            }
+            try {
+                // The slot may have been taken by a consumer before we locked it
+                BluetoothDevice queuedDevice = mDevices[index];
+                if (mSequences.get(index) == position + 1 && queuedDevice != null
+                        && address.equals(queuedDevice.getAddress())) {
+                    mDevices[index] = device;
+                    mRssis[index] = rssi;
+                    mScanRecords[index] = scanRecord;
+                    mTimestamps[index] = timestampMs;
+                    return true;
+                }
+            } finally {
+                mSlotLocks.set(index, 0);
+            }
+        }
+        return false;
+    }
+}
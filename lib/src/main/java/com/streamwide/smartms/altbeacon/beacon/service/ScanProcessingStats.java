@@ -0,0 +1,233 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package com.streamwide.smartms.altbeacon.beacon.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how scanned packets flow through the beacon processing stage.  These may
+ * be read at any time, from any thread, to monitor the load put on the library by the BLE
+ * traffic around the device.
+ */
+public class ScanProcessingStats {
+    private static final ScanProcessingStats INSTANCE = new ScanProcessingStats();
+
+    private final AtomicLong mPacketsDispatched = new AtomicLong();
+    private final AtomicLong mPacketsRejectedByDispatch = new AtomicLong();
+    private final AtomicLong mPacketsEnqueued = new AtomicLong();
+    private final AtomicLong mPacketsProcessed = new AtomicLong();
+    private final AtomicLong mPacketsDropped = new AtomicLong();
+    private final AtomicLong mPacketsCoalesced = new AtomicLong();
+    private final AtomicLong mScanCycles = new AtomicLong();
+    private final AtomicLong mMainThreadNanos = new AtomicLong();
+    private volatile long mLastScanCycleMainThreadNanos = 0;
+    private final AtomicLong mDistinctPacketSaturations = new AtomicLong();
+    private final AtomicLong mPacketsSuppressed = new AtomicLong();
+    private final AtomicLong mDuplicatePacketSaturations = new AtomicLong();
+    private volatile int mExtraDataBeaconsTracked = 0;
+    private final AtomicLong mExtraDataBeaconEvictions = new AtomicLong();
+
+    private ScanProcessingStats() {
+
+    }
+
+    @NonNull
+    public static ScanProcessingStats getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the number of packets handed to at least one beacon parser
+     */
+    public long getPacketsDispatched() {
+        return mPacketsDispatched.get();
+    }
+
+    /**
+     * @return the number of packets dropped because no registered beacon parser could match
+     * them, without running any parser
+     */
+    public long getPacketsRejectedByDispatch() {
+        return mPacketsRejectedByDispatch.get();
+    }
+
+    /**
+     * @return the number of packets queued for processing
+     */
+    public long getPacketsEnqueued() {
+        return mPacketsEnqueued.get();
+    }
+
+    /**
+     * @return the number of queued packets that have been processed
+     */
+    public long getPacketsProcessed() {
+        return mPacketsProcessed.get();
+    }
+
+    /**
+     * @return the number of packets discarded because the processing queue was full, including
+     * those replaced by a newer packet from the same device
+     */
+    public long getPacketsDropped() {
+        return mPacketsDropped.get();
+    }
+
+    /**
+     * @return the number of queued packets replaced by a newer packet from the same device, with
+     * {@link ScanOverflowPolicy#COALESCE_BY_MAC}
+     */
+    public long getPacketsCoalesced() {
+        return mPacketsCoalesced.get();
+    }
+
+    /**
+     * @return the number of scan cycles completed
+     */
+    public long getScanCycles() {
+        return mScanCycles.get();
+    }
+
+    /**
+     * @return the time, in nanoseconds, the scanner spent on the main thread during the completed
+     * scan cycles.  Divide by {@link #getScanCycles()} to get the main thread time per scan cycle.
+     */
+    public long getMainThreadNanos() {
+        return mMainThreadNanos.get();
+    }
+
+    /**
+     * @return the time, in nanoseconds, the scanner spent on the main thread during the last
+     * completed scan cycle
+     */
+    public long getLastScanCycleMainThreadNanos() {
+        return mLastScanCycleMainThreadNanos;
+    }
+
+    /**
+     * @return the number of packets the detection of distinct packets per scan had to forget to
+     * make room for newer ones.  If this grows, raise
+     * {@link com.streamwide.smartms.altbeacon.beacon.BeaconManager#setDistinctPacketTrackingCapacity(int)}.
+     */
+    public long getDistinctPacketSaturations() {
+        return mDistinctPacketSaturations.get();
+    }
+
+    /**
+     * @return the number of packets dropped before being parsed because they were copies of a
+     * packet recently processed, as configured with
+     * {@link com.streamwide.smartms.altbeacon.beacon.BeaconManager#setDuplicatePacketSuppressionMillis(long)}
+     */
+    public long getPacketsSuppressed() {
+        return mPacketsSuppressed.get();
+    }
+
+    /**
+     * @return the number of packets the duplicate packet suppression had to forget before their
+     * window ended, to make room for newer ones.  Copies of these packets are processed again.
+     */
+    public long getDuplicatePacketSaturations() {
+        return mDuplicatePacketSaturations.get();
+    }
+
+    /**
+     * @return the number of devices whose beacons are tracked to merge the extra data frames they
+     * send, such as Eddystone telemetry, into their main beacon
+     */
+    public int getExtraDataBeaconsTracked() {
+        return mExtraDataBeaconsTracked;
+    }
+
+    /**
+     * @return the number of devices no longer tracked to merge extra data frames, because they
+     * were not seen for too long or to make room for other devices
+     */
+    public long getExtraDataBeaconEvictions() {
+        return mExtraDataBeaconEvictions.get();
+    }
+
+    /**
+     * Sets all counters back to zero
+     */
+    public void reset() {
+        mPacketsDispatched.set(0);
+        mPacketsRejectedByDispatch.set(0);
+        mPacketsEnqueued.set(0);
+        mPacketsProcessed.set(0);
+        mPacketsDropped.set(0);
+        mPacketsCoalesced.set(0);
+        mScanCycles.set(0);
+        mMainThreadNanos.set(0);
+        mLastScanCycleMainThreadNanos = 0;
+        mDistinctPacketSaturations.set(0);
+        mPacketsSuppressed.set(0);
+        mDuplicatePacketSaturations.set(0);
+        mExtraDataBeaconEvictions.set(0);
+    }
+
+    void recordPacketDispatched() {
+        mPacketsDispatched.incrementAndGet();
+    }
+
+    void recordPacketRejectedByDispatch() {
+        mPacketsRejectedByDispatch.incrementAndGet();
+    }
+
+    void recordPacketEnqueued() {
+        mPacketsEnqueued.incrementAndGet();
+    }
+
+    void recordPacketProcessed() {
+        mPacketsProcessed.incrementAndGet();
+    }
+
+    void recordPacketDropped() {
+        mPacketsDropped.incrementAndGet();
+    }
+
+    void recordPacketCoalesced() {
+        mPacketsCoalesced.incrementAndGet();
+        mPacketsDropped.incrementAndGet();
+    }
+
+    void recordScanCycle(long mainThreadNanos) {
+        mScanCycles.incrementAndGet();
+        mMainThreadNanos.addAndGet(mainThreadNanos);
+        mLastScanCycleMainThreadNanos = mainThreadNanos;
+    }
+
+    void recordDistinctPacketSaturations(long saturations) {
+        mDistinctPacketSaturations.addAndGet(saturations);
+    }
+
+    void recordPacketSuppressed() {
+        mPacketsSuppressed.incrementAndGet();
+    }
+
+    void recordDuplicatePacketSaturations(long saturations) {
+        mDuplicatePacketSaturations.addAndGet(saturations);
+    }
+
+    void setExtraDataBeaconsTracked(int tracked) {
+        mExtraDataBeaconsTracked = tracked;
+    }
+
+    void recordExtraDataBeaconsEvicted(int evicted) {
+        mExtraDataBeaconEvictions.addAndGet(evicted);
+    }
+}
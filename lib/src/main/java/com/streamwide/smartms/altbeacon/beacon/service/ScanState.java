@@ -192,6 +192,9 @@ public class ScanState implements Serializable {
             if (scanState.mExtraBeaconDataTracker == null) {
                 scanState.mExtraBeaconDataTracker = new ExtraDataBeaconTracker();
             }
+            for (Map.Entry<Region, RangeState> entry : scanState.mRangedRegionState.entrySet()) {
+                entry.getValue().setRssiFilterFactory(BeaconManager.getRegionRssiFilterFactory(entry.getKey()));
+            }
             scanState.mMonitoringStatus = MonitoringStatus.getInstance();
             LogManager.d(TAG, "Scan state restore regions: monitored=" + scanState.getMonitoringStatus().regions(context).size() + " ranged=" + scanState.getRangedRegionState().keySet().size());
             return scanState;
@@ -277,7 +280,8 @@ public class ScanState implements Serializable {
         for (Region newRangedRegion : newRangedRegions) {
             if (!existingRangedRegions.contains(newRangedRegion)) {
                 LogManager.d(TAG, "Starting ranging region: " + newRangedRegion);
-                mRangedRegionState.put(newRangedRegion, new RangeState(new Callback(mContext.getPackageName())));
+                mRangedRegionState.put(newRangedRegion, new RangeState(new Callback(mContext.getPackageName()),
+                        BeaconManager.getRegionRssiFilterFactory(newRangedRegion)));
             }
         }
         for (Region existingRangedRegion : existingRangedRegions) {
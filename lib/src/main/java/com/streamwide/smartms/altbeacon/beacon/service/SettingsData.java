@@ -51,6 +51,7 @@ public class SettingsData implements Serializable {
     // the scanning service is running in another process
     //        BeaconManager.setDistanceModelUpdateUrl(...)
     //        BeaconManager.setRssiFilterImplClass(...)
+    //        BeaconManager.setRssiFilterFactory(...)
     //        BeaconManager.setBeaconSimulator(...)
     //        beaconManager.setNonBeaconLeScanCallback(...)
 
@@ -17,20 +17,31 @@ package com.streamwide.smartms.altbeacon.beacon.service.scanner;
 
 import android.bluetooth.BluetoothDevice;
 
-import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
+
 /**
  * Android API agnostic Bluetooth scan callback wrapper.
  * <p>
- * Since Android bluetooth scan callbacks occur on the main thread it is expected that these
- * callbacks will also occur on the main thread.
+ * These callbacks occur on the scan cycle thread of the scanner, which is a background thread
+ * unless {@link BeaconManager#isMainThreadScanCyclingEnabled()}.  The scanner used before Android
+ * 5.0 delivers scan results on the thread the OS calls it on.
  * <p>
  * Created by dyoung on 10/6/14.
  */
-@MainThread
 public interface CycledLeScanCallback {
     void onLeScan(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs);
 
+    /**
+     * Delivers several scanned packets at once.  The batch is reused once this method returns.
+     * By default each packet is passed to {@link #onLeScan(BluetoothDevice, int, byte[], long)}.
+     */
+    default void onLeScanBatch(@NonNull ScanBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            onLeScan(batch.getDevice(i), batch.getRssi(i), batch.getScanRecord(i), batch.getTimestampMs(i));
+        }
+    }
+
     void onCycleEnd();
 }
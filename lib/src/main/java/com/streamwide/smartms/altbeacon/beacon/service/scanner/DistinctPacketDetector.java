@@ -18,9 +18,7 @@ package com.streamwide.smartms.altbeacon.beacon.service.scanner;
 
 import androidx.annotation.NonNull;
 
-import java.nio.ByteBuffer;
-import java.util.HashSet;
-import java.util.Set;
+import com.streamwide.smartms.altbeacon.beacon.utils.LongKeyedTable;
 
 /**
  * Created by dyoung on 4/8/17.
@@ -31,31 +29,72 @@ import java.util.Set;
  * requires stopping and restarting scanning on these devices.  This allows detecting if that is
  * necessary.
  * <p>
- * <strong>This class is not thread safe.</strong>
+ * Packets are tracked as 64 bit fingerprints of the MAC address and scan record, in a table
+ * allocated up front, so that checking a packet allocates nothing.  Once <code>capacity</code>
+ * packets are tracked, the oldest one is forgotten to make room for the next one, and
+ * {@link #getSaturationCount()} is incremented.  Two different packets with the same fingerprint
+ * would be taken for the same packet, which is unlikely enough with 64 bits for the purpose of
+ * this class.  Exact verification compares the packets themselves when their fingerprints are
+ * equal, at the cost of keeping a copy of each tracked scan record.
+ * <p>
+ * This class is thread safe.
  */
 public class DistinctPacketDetector {
-    // Sanity limit for the number of packets to track, so we don't use too much memory
-    private static final int MAX_PACKETS_TO_TRACK = 1000;
+    /**
+     * Default number of packets to track, so we don't use too much memory
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+    /**
+     * Largest number of packets which may be tracked
+     */
+    public static final int MAX_CAPACITY = PacketFingerprints.MAX_CAPACITY;
 
     @NonNull
-    private final Set<ByteBuffer> mDistinctPacketsDetected = new HashSet<>();
+    private final PacketFingerprints mDistinctPacketsDetected;
+    private long mSaturationCount = 0;
+
+    public DistinctPacketDetector() {
+        this(DEFAULT_CAPACITY, false);
+    }
 
-    public void clearDetections() {
+    /**
+     * @param capacity          maximum number of packets tracked at once
+     * @param exactVerification true to compare packets byte by byte when their fingerprints are
+     *                          equal
+     */
+    public DistinctPacketDetector(int capacity, boolean exactVerification) {
+        mDistinctPacketsDetected = new PacketFingerprints(capacity, exactVerification);
+    }
+
+    public synchronized void clearDetections() {
         mDistinctPacketsDetected.clear();
+        mSaturationCount = 0;
     }
 
-    public boolean isPacketDistinct(@NonNull String originMacAddress, @NonNull byte[] scanRecord) {
-        byte[] macBytes = originMacAddress.getBytes();
-        ByteBuffer buffer = ByteBuffer.allocate(macBytes.length + scanRecord.length);
-        buffer.put(macBytes);
-        buffer.put(scanRecord);
-        buffer.rewind(); // rewind puts position back to beginning so .equals and .hashCode work
-
-        if (mDistinctPacketsDetected.size() == MAX_PACKETS_TO_TRACK) {
-            return mDistinctPacketsDetected.contains(buffer);
-        } else {
-            return mDistinctPacketsDetected.add(buffer);
+    /**
+     * @return true unless the same packet was seen from the same device since detections were
+     * last cleared
+     */
+    public synchronized boolean isPacketDistinct(@NonNull String originMacAddress, @NonNull byte[] scanRecord) {
+        long macAddress = LongKeyedTable.parseMacAddress(originMacAddress);
+        long fingerprint = PacketFingerprints.fingerprint(macAddress, scanRecord);
+        if (mDistinctPacketsDetected.find(fingerprint, macAddress, scanRecord) >= 0) {
+            return false;
+        }
+        if (mDistinctPacketsDetected.isFull()) {
+            mDistinctPacketsDetected.removeOldest();
+            mSaturationCount++;
         }
+        mDistinctPacketsDetected.add(fingerprint, macAddress, scanRecord);
+        return true;
     }
 
+    /**
+     * @return the number of packets forgotten to make room for newer ones since detections were
+     * last cleared.  A non zero count means <code>capacity</code> is too small to track all the
+     * packets seen in a scan cycle.
+     */
+    public synchronized long getSaturationCount() {
+        return mSaturationCount;
+    }
 }
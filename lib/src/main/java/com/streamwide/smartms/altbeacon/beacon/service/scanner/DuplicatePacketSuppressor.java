@@ -0,0 +1,98 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service.scanner;
+
+import androidx.annotation.NonNull;
+
+import com.streamwide.smartms.altbeacon.beacon.utils.LongKeyedTable;
+
+/**
+ * Rejects the packets identical to one seen from the same device less than a given time ago, so
+ * that they can be dropped before being parsed.  A packet which is let through opens a window of
+ * <code>ttlMillis</code> during which its copies are rejected.  Copies do not extend the window,
+ * so a device repeating the same packet still gets one packet processed per window.
+ * <p>
+ * Packets are tracked as 64 bit fingerprints of the MAC address and scan record, in a table
+ * allocated up front, so that checking a packet allocates nothing.  As all packets are tracked
+ * for the same time, they expire in the order they were let through, and are expired from the
+ * oldest one as time passes.  Once <code>capacity</code> packets are tracked, the oldest one is
+ * forgotten before it expires to make room for the next one, and {@link #getSaturationCount()}
+ * is incremented.
+ * <p>
+ * This class is thread safe.
+ */
+public class DuplicatePacketSuppressor {
+    /**
+     * Default number of packets to track
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final long mTtlMillis;
+    @NonNull
+    private final PacketFingerprints mPackets;
+    // Time at which each tracked packet expires, by entry
+    @NonNull
+    private final long[] mExpiryTimes;
+    private long mSaturationCount = 0;
+
+    /**
+     * @param ttlMillis time in milliseconds during which copies of a packet are rejected
+     * @param capacity  maximum number of packets tracked at once
+     */
+    public DuplicatePacketSuppressor(long ttlMillis, int capacity) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be > 0.");
+        }
+        mTtlMillis = ttlMillis;
+        mPackets = new PacketFingerprints(capacity, false);
+        mExpiryTimes = new long[capacity];
+    }
+
+    /**
+     * @param originMacAddress MAC address of the device which sent the packet
+     * @param scanRecord       the packet
+     * @param nowMillis        current time in milliseconds, from a monotonic clock
+     * @return true if the packet was seen from the same device less than the TTL ago
+     */
+    public synchronized boolean isDuplicate(@NonNull String originMacAddress, @NonNull byte[] scanRecord,
+                                            long nowMillis) {
+        while (mPackets.size() > 0 && mExpiryTimes[mPackets.oldest()] <= nowMillis) {
+            mPackets.removeOldest();
+        }
+        long macAddress = LongKeyedTable.parseMacAddress(originMacAddress);
+        long fingerprint = PacketFingerprints.fingerprint(macAddress, scanRecord);
+        if (mPackets.find(fingerprint, macAddress, scanRecord) >= 0) {
+            return true;
+        }
+        if (mPackets.isFull()) {
+            mPackets.removeOldest();
+            mSaturationCount++;
+        }
+        int entry = mPackets.add(fingerprint, macAddress, scanRecord);
+        mExpiryTimes[entry] = nowMillis + mTtlMillis;
+        return false;
+    }
+
+    /**
+     * @return the number of packets forgotten before they expired to make room for newer ones.
+     * A growing count means <code>capacity</code> is too small for the TTL and the number of
+     * distinct packets received.
+     */
+    public synchronized long getSaturationCount() {
+        return mSaturationCount;
+    }
+}
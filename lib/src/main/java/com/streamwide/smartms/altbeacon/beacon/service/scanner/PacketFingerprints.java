@@ -0,0 +1,170 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service.scanner;
+
+import androidx.annotation.NonNull;
+
+import com.streamwide.smartms.altbeacon.beacon.utils.LongKeyedTable;
+
+/**
+ * Bounded set of packets, each identified by a 64 bit fingerprint of its MAC address and scan
+ * record, kept in the order they were added.  All memory is allocated up front, so that looking
+ * up and adding packets allocates nothing.
+ * <p>
+ * Fingerprints are indexed by a {@link LongKeyedTable}.  Two different packets with the same
+ * fingerprint would be taken for the same packet, unless exact verification is enabled: the MAC
+ * address and scan record of each packet are then kept, and compared when fingerprints are equal.
+ * <p>
+ * This class is not thread safe.
+ */
+final class PacketFingerprints {
+    /**
+     * Largest number of packets which may be tracked
+     */
+    static final int MAX_CAPACITY = 1 << 24;
+
+    private final int mCapacity;
+    private final boolean mExactVerification;
+
+    @NonNull
+    private final LongKeyedTable mTable;
+
+    // Entries, from the oldest at mOldest, in a ring
+    @NonNull
+    private final long[] mFingerprints;
+    // MAC address and scan record of each entry, only kept for exact verification
+    private final long[] mMacAddresses;
+    private final byte[][] mScanRecords;
+    private final int[] mScanRecordLengths;
+    private int mOldest = 0;
+    private int mSize = 0;
+
+    PacketFingerprints(int capacity, boolean exactVerification) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be > 0 and <= " + MAX_CAPACITY + ".");
+        }
+        mCapacity = capacity;
+        mExactVerification = exactVerification;
+        mTable = new LongKeyedTable(capacity);
+        mFingerprints = new long[capacity];
+        if (exactVerification) {
+            mMacAddresses = new long[capacity];
+            mScanRecords = new byte[capacity][];
+            mScanRecordLengths = new int[capacity];
+        } else {
+            mMacAddresses = null;
+            mScanRecords = null;
+            mScanRecordLengths = null;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isFull() {
+        return mSize == mCapacity;
+    }
+
+    /**
+     * @return the entry of the oldest packet.  Only valid if the set is not empty.
+     */
+    int oldest() {
+        return mOldest;
+    }
+
+    /**
+     * @return the entry of the packet, or -1 if it is not in the set
+     */
+    int find(long fingerprint, long macAddress, @NonNull byte[] scanRecord) {
+        for (int slot = mTable.find(fingerprint); slot != LongKeyedTable.NONE;
+             slot = mTable.findNext(fingerprint, slot)) {
+            int entry = mTable.entryAt(slot);
+            if (!mExactVerification || isSamePacket(entry, macAddress, scanRecord)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a packet which is not in the set yet.  The set must not be full.
+     *
+     * @return the entry of the packet, which stays valid until it is removed
+     */
+    int add(long fingerprint, long macAddress, @NonNull byte[] scanRecord) {
+        int entry = (mOldest + mSize) % mCapacity;
+        mSize++;
+        mTable.put(fingerprint, entry);
+        mFingerprints[entry] = fingerprint;
+        if (mExactVerification) {
+            mMacAddresses[entry] = macAddress;
+            byte[] copy = mScanRecords[entry];
+            if (copy == null || copy.length < scanRecord.length) {
+                copy = new byte[scanRecord.length];
+                mScanRecords[entry] = copy;
+            }
+            System.arraycopy(scanRecord, 0, copy, 0, scanRecord.length);
+            mScanRecordLengths[entry] = scanRecord.length;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the oldest packet.  The set must not be empty.
+     */
+    void removeOldest() {
+        mTable.remove(mFingerprints[mOldest], mOldest);
+        mOldest = (mOldest + 1) % mCapacity;
+        mSize--;
+    }
+
+    void clear() {
+        if (mSize > 0) {
+            mTable.clear();
+            mOldest = 0;
+            mSize = 0;
+        }
+    }
+
+    private boolean isSamePacket(int entry, long macAddress, @NonNull byte[] scanRecord) {
+        if (mMacAddresses[entry] != macAddress || mScanRecordLengths[entry] != scanRecord.length) {
+            return false;
+        }
+        byte[] copy = mScanRecords[entry];
+        for (int i = 0; i < scanRecord.length; i++) {
+            if (copy[i] != scanRecord[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a 64 bit FNV-1a hash of the MAC address and scan record
+     */
+    static long fingerprint(long macAddress, @NonNull byte[] scanRecord) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < 6; i++) {
+            hash = (hash ^ ((macAddress >>> (i * 8)) & 0xff)) * 0x100000001b3L;
+        }
+        for (byte b : scanRecord) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Scanned packets delivered together by {@link CycledLeScanCallback#onLeScanBatch(ScanBatch)}.
+ * <p>
+ * A batch is reused for the next packets once the callback returns, so its contents must be
+ * copied by anything that keeps them.
+ */
+public final class ScanBatch {
+    @NonNull
+    private BluetoothDevice[] mDevices;
+    @NonNull
+    private int[] mRssis;
+    @NonNull
+    private byte[][] mScanRecords;
+    @NonNull
+    private long[] mTimestamps;
+    private int mSize;
+
+    ScanBatch(int capacity) {
+        mDevices = new BluetoothDevice[capacity];
+        mRssis = new int[capacity];
+        mScanRecords = new byte[capacity][];
+        mTimestamps = new long[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    @NonNull
+    public BluetoothDevice getDevice(int index) {
+        checkIndex(index);
+        return mDevices[index];
+    }
+
+    public int getRssi(int index) {
+        checkIndex(index);
+        return mRssis[index];
+    }
+
+    @NonNull
+    public byte[] getScanRecord(int index) {
+        checkIndex(index);
+        return mScanRecords[index];
+    }
+
+    public long getTimestampMs(int index) {
+        checkIndex(index);
+        return mTimestamps[index];
+    }
+
+    void add(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
+        if (mSize == mDevices.length) {
+            int capacity = Math.max(mSize * 2, 1);
+            mDevices = Arrays.copyOf(mDevices, capacity);
+            mRssis = Arrays.copyOf(mRssis, capacity);
+            mScanRecords = Arrays.copyOf(mScanRecords, capacity);
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+        }
+        mDevices[mSize] = device;
+        mRssis[mSize] = rssi;
+        mScanRecords[mSize] = scanRecord;
+        mTimestamps[mSize] = timestampMs;
+        mSize++;
+    }
+
+    void clear() {
+        // Drop the references, so that the packets can be collected while the batch is idle
+        Arrays.fill(mDevices, 0, mSize, null);
+        Arrays.fill(mScanRecords, 0, mSize, null);
+        mSize = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+    }
+}
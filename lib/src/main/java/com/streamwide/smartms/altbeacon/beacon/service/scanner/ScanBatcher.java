@@ -0,0 +1,115 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.service.scanner;
+
+import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.streamwide.smartms.altbeacon.beacon.BeaconManager;
+
+/**
+ * Collects the packets delivered by the Bluetooth scan callbacks, and hands them over to another
+ * callback in batches of {@link BeaconManager#getScanBatchSize()} packets.  A partial batch is
+ * handed over once {@link BeaconManager#getScanBatchWindowMillis()} elapsed since its first
+ * packet, and always before the end of a scan cycle is reported.  Batches of scan results
+ * delivered by the OS are handed over as one batch, whatever their size.
+ * <p>
+ * All methods must be called on the scan cycle thread of the scanner.
+ */
+final class ScanBatcher implements CycledLeScanCallback {
+    @NonNull
+    private final CycledLeScanCallback mCallback;
+    @Nullable
+    private Handler mHandler;
+    @NonNull
+    private final ScanBatch mBatch = new ScanBatch(BeaconManager.getScanBatchSize());
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            flush();
+        }
+    };
+    private boolean mFlushScheduled = false;
+
+    ScanBatcher(@NonNull CycledLeScanCallback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the handler of the scan cycle thread, on which partial batches are handed over
+     */
+    void setHandler(@NonNull Handler handler) {
+        mHandler = handler;
+    }
+
+    @Override
+    public void onLeScan(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
+        int batchSize = BeaconManager.getScanBatchSize();
+        if (batchSize <= 1 && mBatch.size() == 0) {
+            mCallback.onLeScan(device, rssi, scanRecord, timestampMs);
+            return;
+        }
+        mBatch.add(device, rssi, scanRecord, timestampMs);
+        if (mBatch.size() >= batchSize) {
+            flush();
+        } else if (!mFlushScheduled && mHandler != null) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushTask, BeaconManager.getScanBatchWindowMillis());
+        }
+    }
+
+    /**
+     * Adds a packet of a batch of scan results delivered by the OS.  The packets added are handed
+     * over together by the next {@link #flush()}, along with any collected before them.
+     */
+    void addBatchResult(@NonNull BluetoothDevice device, int rssi, @NonNull byte[] scanRecord, long timestampMs) {
+        mBatch.add(device, rssi, scanRecord, timestampMs);
+    }
+
+    @Override
+    public void onLeScanBatch(@NonNull ScanBatch batch) {
+        flush();
+        mCallback.onLeScanBatch(batch);
+    }
+
+    @Override
+    public void onCycleEnd() {
+        flush();
+        mCallback.onCycleEnd();
+    }
+
+    /**
+     * Hands over the packets collected so far
+     */
+    void flush() {
+        if (mFlushScheduled) {
+            mFlushScheduled = false;
+            mHandler.removeCallbacks(mFlushTask);
+        }
+        if (mBatch.size() > 0) {
+            try {
+                mCallback.onLeScanBatch(mBatch);
+            } finally {
+                mBatch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package com.streamwide.smartms.altbeacon.beacon.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reads integer fields of up to eight bytes straight out of a byte buffer, without going through
+ * an intermediate array or string.
+ */
+public final class ByteUtils {
+    private static final int MAX_FIELD_LENGTH = 8;
+
+    private ByteUtils() {
+        // no instances
+    }
+
+    /**
+     * Reads an unsigned integer.
+     *
+     * @param bytes        the buffer to read from
+     * @param startIndex   index of the first byte of the field, inclusive
+     * @param endIndex     index of the last byte of the field, inclusive
+     * @param littleEndian whether the least significant byte comes first
+     * @return the value of the field.  An eight byte field with its most significant bit set
+     * is returned as a negative number.
+     * @throws IllegalArgumentException       if the field is longer than eight bytes
+     * @throws ArrayIndexOutOfBoundsException if the field is outside of the buffer
+     */
+    public static long readUnsigned(@NonNull byte[] bytes, int startIndex, int endIndex, boolean littleEndian) {
+        int length = endIndex - startIndex + 1;
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Cannot read a field of " + length + " bytes into a long");
+        }
+        long value = 0L;
+        if (littleEndian) {
+            for (int i = endIndex; i >= startIndex; i--) {
+                value = (value << 8) | (bytes[i] & 0xff);
+            }
+        } else {
+            for (int i = startIndex; i <= endIndex; i++) {
+                value = (value << 8) | (bytes[i] & 0xff);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads a two's complement signed integer, sign extended from the length of the field.
+     *
+     * @param bytes        the buffer to read from
+     * @param startIndex   index of the first byte of the field, inclusive
+     * @param endIndex     index of the last byte of the field, inclusive
+     * @param littleEndian whether the least significant byte comes first
+     * @return the value of the field
+     * @throws IllegalArgumentException       if the field is longer than eight bytes
+     * @throws ArrayIndexOutOfBoundsException if the field is outside of the buffer
+     */
+    public static long readSigned(@NonNull byte[] bytes, int startIndex, int endIndex, boolean littleEndian) {
+        long value = readUnsigned(bytes, startIndex, endIndex, littleEndian);
+        int unusedBits = Long.SIZE - (endIndex - startIndex + 1) * 8;
+        if (unusedBits == Long.SIZE) {
+            return 0L;
+        }
+        return (value << unusedBits) >> unusedBits;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package com.streamwide.smartms.altbeacon.beacon.utils;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing table with linear probing, indexing by a <code>long</code> key the entries of
+ * arrays kept by its owner, so that looking up a key neither allocates nor boxes.  Several entries
+ * may have the same key.
+ * <p>
+ * The table is sized for a maximum number of entries when created: an owner needing more creates
+ * a larger table and puts its entries again.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LongKeyedTable {
+    /**
+     * Returned when no entry is found
+     */
+    public static final int NONE = -1;
+    /**
+     * Largest number of entries a table may hold
+     */
+    public static final int MAX_CAPACITY = 1 << 28;
+
+    private final long[] mKeys;
+    // Entry + 1 in each slot.  0 marks a free slot
+    private final int[] mEntries;
+    private final int mMask;
+
+    /**
+     * @param capacity maximum number of entries held
+     */
+    public LongKeyedTable(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be > 0 and <= " + MAX_CAPACITY + ".");
+        }
+        // Keep the table at most half full, so that probe sequences stay short
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        mKeys = new long[tableSize];
+        mEntries = new int[tableSize];
+        mMask = tableSize - 1;
+    }
+
+    /**
+     * @return the entry with the key, or {@link #NONE}.  If several entries have the key, any of
+     * them.
+     */
+    public int get(long key) {
+        int slot = find(key);
+        return slot == NONE ? NONE : entryAt(slot);
+    }
+
+    /**
+     * @return the slot of the first entry with the key, or {@link #NONE}
+     */
+    public int find(long key) {
+        return probe(key, homeSlot(key));
+    }
+
+    /**
+     * @return the slot of the next entry with the key after the one in the given slot, or
+     * {@link #NONE}
+     */
+    public int findNext(long key, int slot) {
+        return probe(key, (slot + 1) & mMask);
+    }
+
+    /**
+     * @return the entry in a slot returned by {@link #find(long)} or {@link #findNext(long, int)}
+     */
+    public int entryAt(int slot) {
+        return mEntries[slot] - 1;
+    }
+
+    /**
+     * Adds an entry.  The table must hold fewer entries than its capacity.
+     */
+    public void put(long key, int entry) {
+        int slot = homeSlot(key);
+        while (mEntries[slot] != 0) {
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = key;
+        mEntries[slot] = entry + 1;
+    }
+
+    /**
+     * Changes the index of an entry in the table, as its owner moves it in its arrays
+     */
+    public void move(long key, int entry, int newEntry) {
+        mEntries[slotOf(key, entry)] = newEntry + 1;
+    }
+
+    /**
+     * Removes an entry, which must be in the table
+     */
+    public void remove(long key, int entry) {
+        int slot = slotOf(key, entry);
+        // Move back the keys probed past the removed one, so that no free slot is left in their
+        // probe sequence
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mMask;
+            if (mEntries[next] == 0) {
+                break;
+            }
+            int home = homeSlot(mKeys[next]);
+            // Distances from the home slot of the key, which may wrap around the table
+            if (((slot - home) & mMask) < ((next - home) & mMask)) {
+                mKeys[slot] = mKeys[next];
+                mEntries[slot] = mEntries[next];
+                slot = next;
+            }
+        }
+        mEntries[slot] = 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mEntries, 0);
+    }
+
+    /**
+     * @return the 48 bits of a MAC address formatted as by <code>BluetoothDevice</code>, read
+     * without allocating, or 0 for no address
+     */
+    public static long parseMacAddress(@Nullable String macAddress) {
+        long value = 0;
+        if (macAddress != null) {
+            for (int i = 0; i < macAddress.length(); i++) {
+                int digit = Character.digit(macAddress.charAt(i), 16);
+                if (digit >= 0) {
+                    value = (value << 4) | digit;
+                }
+            }
+        }
+        return value & 0xffffffffffffL;
+    }
+
+    private int probe(long key, int slot) {
+        while (mEntries[slot] != 0) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return NONE;
+    }
+
+    private int slotOf(long key, int entry) {
+        int slot = homeSlot(key);
+        while (mEntries[slot] != entry + 1) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private int homeSlot(long key) {
+        // Mix the high bits of the key into the low ones, which index the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mMask;
+    }
+}
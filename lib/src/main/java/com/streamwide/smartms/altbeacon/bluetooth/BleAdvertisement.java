@@ -15,50 +15,157 @@
 
 package com.streamwide.smartms.altbeacon.bluetooth;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Parses a byte array representing a BLE advertisement into
  * a number of "Payload Data Units" (PDUs).
  * <p>
+ * The PDUs are indexed in a single pass into type/start/end slots that point into the original
+ * byte array, which is neither copied nor modified.  The same instance may be re-used for
+ * successive packets by calling {@link #reset(byte[])}, so that every {@link com.streamwide.smartms.altbeacon.beacon.BeaconParser}
+ * looking at one packet shares the same index.
+ * <p>
+ * <strong>This class is not thread safe.</strong>  The byte array must not be changed while it is
+ * being indexed by this class.
+ * <p>
  * Created by dyoung on 4/14/15.
  */
 public class BleAdvertisement {
     private static final String TAG = "BleAdvertisement";
-    private List<Pdu> mPdus;
+    // Android puts the scan response at offset 31
+    private static final int SCAN_RESPONSE_OFFSET = 31;
+    // A legacy advertisement plus scan response cannot hold more PDUs than this
+    private static final int DEFAULT_PDU_CAPACITY = 32;
+
+    @Nullable
     private byte[] mBytes;
+    private int mPduCount;
+    private byte[] mPduTypes = new byte[DEFAULT_PDU_CAPACITY];
+    private int[] mPduStartIndexes = new int[DEFAULT_PDU_CAPACITY];
+    private int[] mPduEndIndexes = new int[DEFAULT_PDU_CAPACITY];
+    @Nullable
+    private List<Pdu> mPdus;
+
+    /**
+     * Makes an empty advertisement index, to be filled by {@link #reset(byte[])}
+     */
+    public BleAdvertisement() {
+    }
 
     public BleAdvertisement(@Nullable byte[] bytes) {
-        mBytes = bytes != null ? bytes.clone() : null;
-        ArrayList<Pdu> pdus = new ArrayList<Pdu>();
+        reset(bytes);
+    }
+
+    /**
+     * Re-indexes this instance over a new advertisement.  Any index built for a previous
+     * advertisement is discarded.
+     *
+     * @param bytes the raw advertisement bytes, which are not copied
+     * @return this instance
+     */
+    @NonNull
+    public BleAdvertisement reset(@Nullable byte[] bytes) {
+        mBytes = bytes;
+        mPduCount = 0;
+        mPdus = null;
         // Get PDUs from the main advert
-        parsePdus(0, bytes != null && bytes.length < 31 ? bytes.length : 31, pdus);
+        parsePdus(0, bytes != null && bytes.length < SCAN_RESPONSE_OFFSET ? bytes.length : SCAN_RESPONSE_OFFSET);
         // Get PDUs from the scan response
-        // Android puts the scan response at offset 31
-        if (bytes != null && bytes.length > 31) {
-            parsePdus(31, bytes.length, pdus);
+        if (bytes != null && bytes.length > SCAN_RESPONSE_OFFSET) {
+            parsePdus(SCAN_RESPONSE_OFFSET, bytes.length);
         }
-        mPdus = pdus;
+        return this;
     }
 
-    private void parsePdus(int startIndex, int endIndex, ArrayList<Pdu> pdus) {
+    private void parsePdus(int startIndex, int endIndex) {
+        byte[] bytes = mBytes;
+        if (bytes == null) {
+            return;
+        }
         int index = startIndex;
-        Pdu pdu = null;
-        if (mBytes != null) {
-            do {
-                pdu = Pdu.parse(mBytes, index);
-                if (pdu != null) {
-                    index = index + pdu.getDeclaredLength() + 1;
-                    pdus.add(pdu);
-                }
+        // Same rules as Pdu.parse, without allocating a Pdu for each slot
+        while (bytes.length - index >= 2) {
+            byte length = bytes[index];
+            if (length <= 0 || index + 2 >= bytes.length) {
+                return;
+            }
+            int endIndexOfPdu = index + length;
+            if (endIndexOfPdu >= bytes.length) {
+                endIndexOfPdu = bytes.length - 1;
+            }
+            addPdu(bytes[index + 1], index + 2, endIndexOfPdu);
+            index = index + length + 1;
+            if (index >= endIndex) {
+                return;
             }
-            while (pdu != null && index < endIndex);
         }
     }
 
+    private void addPdu(byte type, int startIndex, int endIndex) {
+        if (mPduCount == mPduTypes.length) {
+            int capacity = mPduCount * 2;
+            mPduTypes = Arrays.copyOf(mPduTypes, capacity);
+            mPduStartIndexes = Arrays.copyOf(mPduStartIndexes, capacity);
+            mPduEndIndexes = Arrays.copyOf(mPduEndIndexes, capacity);
+        }
+        mPduTypes[mPduCount] = type;
+        mPduStartIndexes[mPduCount] = startIndex;
+        mPduEndIndexes[mPduCount] = endIndex;
+        mPduCount++;
+    }
+
+    /**
+     * The advertisement bytes being indexed.  This is the array passed in, not a copy.
+     *
+     * @return
+     */
+    @Nullable
+    public byte[] getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Number of PDUs found in the advertisement
+     *
+     * @return
+     */
+    public int getPduCount() {
+        return mPduCount;
+    }
+
+    /**
+     * PDU type field of the PDU at the specified position
+     *
+     * @see Pdu#getType()
+     */
+    public byte getPduType(int pduIndex) {
+        return mPduTypes[pduIndex];
+    }
+
+    /**
+     * Start index within the byte buffer of the payload of the PDU at the specified position
+     *
+     * @see Pdu#getStartIndex()
+     */
+    public int getPduStartIndex(int pduIndex) {
+        return mPduStartIndexes[pduIndex];
+    }
+
+    /**
+     * End index within the byte buffer of the PDU at the specified position
+     *
+     * @see Pdu#getEndIndex()
+     */
+    public int getPduEndIndex(int pduIndex) {
+        return mPduEndIndexes[pduIndex];
+    }
+
     /**
      * The list of PDUs inside the advertisement
      *
@@ -66,6 +173,14 @@ public class BleAdvertisement {
      */
     @Nullable
     public List<Pdu> getPdus() {
+        if (mPdus == null) {
+            ArrayList<Pdu> pdus = new ArrayList<>(mPduCount);
+            for (int i = 0; i < mPduCount; i++) {
+                // The PDU header (length and type) sits two bytes before the payload
+                pdus.add(Pdu.parse(mBytes, mPduStartIndexes[i] - 2));
+            }
+            mPdus = pdus;
+        }
         return mPdus;
     }
-}
\ No newline at end of file
+}
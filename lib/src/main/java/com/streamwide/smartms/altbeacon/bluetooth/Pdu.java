@@ -31,7 +31,6 @@ public class Pdu {
     private int mDeclaredLength;
     private int mStartIndex;
     private int mEndIndex;
-    private byte[] mBytes;
 
     /**
      * Parse a PDU from a byte array looking offset by startIndex
@@ -61,7 +60,6 @@ public class Pdu {
                     pdu.mType = type;
                     pdu.mDeclaredLength = length;
                     pdu.mStartIndex = firstIndex;
-                    pdu.mBytes = bytes.clone();
                 }
             }
         }
@@ -0,0 +1,154 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package org.altbeacon;
+
+import static org.junit.Assume.assumeTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.Identifier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares the throughput of ranging map lookups keyed by {@link Beacon} against keys hashed the
+ * way Beacon used to be, from a string of its identifiers, over 1,000 distinct beacons.
+ * <p>
+ * Skipped unless the <code>altbeacon.benchmarks</code> system property is true.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BeaconHashingBenchmarkTest {
+    private static final int BEACON_COUNT = 1000;
+    private static final int ROUNDS = 200;
+    private static final String BENCHMARK_PROPERTY = "altbeacon.benchmarks";
+
+    @Test
+    public void testRangingMapThroughput() {
+        // Timings depend on the machine: only measured when asked for
+        assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+
+        List<Beacon> beacons = new ArrayList<>(BEACON_COUNT);
+        List<Beacon> lookups = new ArrayList<>(BEACON_COUNT);
+        for (int i = 0; i < BEACON_COUNT; i++) {
+            beacons.add(buildBeacon(i, "00:11:22:33:44:55"));
+            // Each detection produces a new Beacon instance for an already ranged beacon
+            lookups.add(buildBeacon(i, "00:11:22:33:44:55"));
+        }
+
+        Map<LegacyKey, Beacon> legacyMap = new HashMap<>();
+        Map<Beacon, Beacon> structuralMap = new HashMap<>();
+        for (Beacon beacon : beacons) {
+            legacyMap.put(new LegacyKey(beacon), beacon);
+            structuralMap.put(beacon, beacon);
+        }
+
+        // warm up both paths before timing them
+        runLegacy(legacyMap, lookups);
+        runStructural(structuralMap, lookups);
+
+        long start = System.nanoTime();
+        int legacyHits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            legacyHits += runLegacy(legacyMap, lookups);
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int structuralHits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            structuralHits += runStructural(structuralMap, lookups);
+        }
+        long structuralNanos = System.nanoTime() - start;
+
+        assertEquals(BEACON_COUNT * ROUNDS, legacyHits);
+        assertEquals(BEACON_COUNT * ROUNDS, structuralHits);
+        System.out.println(String.format("Ranging map lookups over %d beacons: string hash %.1f ops/ms, structural hash %.1f ops/ms",
+                BEACON_COUNT,
+                BEACON_COUNT * ROUNDS / (legacyNanos / 1e6),
+                BEACON_COUNT * ROUNDS / (structuralNanos / 1e6)));
+    }
+
+    private static int runLegacy(Map<LegacyKey, Beacon> map, List<Beacon> lookups) {
+        int hits = 0;
+        for (Beacon beacon : lookups) {
+            if (map.get(new LegacyKey(beacon)) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static int runStructural(Map<Beacon, Beacon> map, List<Beacon> lookups) {
+        int hits = 0;
+        for (Beacon beacon : lookups) {
+            if (map.get(beacon) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static Beacon buildBeacon(int index, String bluetoothAddress) {
+        return new Beacon.Builder()
+                .setId1(new UUID(0x2f234454cf6d4a0fL, 0xadf2f4911ba9ffa6L + index).toString())
+                .setId2(String.valueOf(index >> 8))
+                .setId3(String.valueOf(index & 0xff))
+                .setBluetoothAddress(bluetoothAddress)
+                .setParserIdentifier("altbeacon")
+                .build();
+    }
+
+    /**
+     * Key hashed the way Beacon.hashCode() used to be: from a string built of every identifier
+     * on each call.
+     */
+    private static final class LegacyKey {
+        private final Beacon mBeacon;
+
+        LegacyKey(Beacon beacon) {
+            mBeacon = beacon;
+        }
+
+        @Override
+        public int hashCode() {
+            StringBuilder sb = new StringBuilder();
+            int i = 1;
+            for (Identifier identifier : mBeacon.getIdentifiers()) {
+                if (i > 1) {
+                    sb.append(" ");
+                }
+                sb.append("id").append(i).append(": ").append(identifier);
+                i++;
+            }
+            sb.append(" type ").append(mBeacon.getParserIdentifier());
+            return sb.toString().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof LegacyKey
+                    && mBeacon.getIdentifiers().equals(((LegacyKey) that).mBeacon.getIdentifiers());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.streamwide.smartms.altbeacon.beacon.Beacon;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.UUID;
+
+/**
+ * Checks that {@link Beacon} equality and hash codes agree, with and without hardware equality
+ * enforced, so that beacons can key the ranging maps.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BeaconHashingTest {
+    @After
+    public void tearDown() {
+        Beacon.setHardwareEqualityEnforced(false);
+    }
+
+    @Test
+    public void testEqualBeaconsShareHashCode() {
+        Beacon beacon = buildBeacon(7, "00:11:22:33:44:55");
+        Beacon sameIdentifiers = buildBeacon(7, "66:77:88:99:AA:BB");
+        assertEquals(beacon, sameIdentifiers);
+        assertEquals(beacon.hashCode(), sameIdentifiers.hashCode());
+        assertEquals(false, beacon.equals(buildBeacon(8, "00:11:22:33:44:55")));
+
+        Beacon.setHardwareEqualityEnforced(true);
+        assertEquals(false, beacon.equals(sameIdentifiers));
+        assertEquals(beacon, buildBeacon(7, "00:11:22:33:44:55"));
+        assertEquals(beacon.hashCode(), buildBeacon(7, "00:11:22:33:44:55").hashCode());
+    }
+
+    private static Beacon buildBeacon(int index, String bluetoothAddress) {
+        return new Beacon.Builder()
+                .setId1(new UUID(0x2f234454cf6d4a0fL, 0xadf2f4911ba9ffa6L + index).toString())
+                .setId2(String.valueOf(index >> 8))
+                .setId3(String.valueOf(index & 0xff))
+                .setBluetoothAddress(bluetoothAddress)
+                .setParserIdentifier("altbeacon")
+                .build();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.BeaconParser;
+import com.streamwide.smartms.altbeacon.beacon.utils.ByteUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Differential test of the binary field decoding in {@link BeaconParser} against the
+ * hex string round trip it replaced, over randomized layouts and payloads.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BeaconParserDecodingTest {
+    private static final int ITERATIONS = 5000;
+
+    @Test
+    public void testDecodingMatchesLegacyStringDecoding() {
+        Random random = new Random(20261018L);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            int dataLength = 1 + random.nextInt(16);
+            int powerLength = 1 + random.nextInt(5);
+            boolean dataLittleEndian = random.nextBoolean();
+            int powerCorrection = random.nextInt(256) - 128;
+
+            // m:2-3 type code, i:4-5, p:6-(6+powerLength-1), d:following bytes
+            int powerStart = 6;
+            int powerEnd = powerStart + powerLength - 1;
+            int dataStart = powerEnd + 1;
+            int dataEnd = dataStart + dataLength - 1;
+            String layout = "m:2-3=beac,i:4-5,p:" + powerStart + "-" + powerEnd + ":" + powerCorrection
+                    + ",d:" + dataStart + "-" + dataEnd + (dataLittleEndian ? "l" : "");
+            BeaconParser parser = new BeaconParser().setBeaconLayout(layout);
+
+            byte[] payload = new byte[dataEnd + 1];
+            random.nextBytes(payload);
+            payload[2] = (byte) 0xbe;
+            payload[3] = (byte) 0xac;
+            if (random.nextBoolean()) {
+                // exercise the leading zero handling of wide data fields
+                for (int i = 0; i < Math.max(0, dataLength - 8); i++) {
+                    payload[dataLittleEndian ? dataEnd - i : dataStart + i] = 0;
+                }
+            }
+            byte[] packet = new byte[payload.length + 2];
+            packet[0] = (byte) (payload.length + 1);
+            packet[1] = (byte) 0xff;
+            System.arraycopy(payload, 0, packet, 2, payload.length);
+
+            String message = "layout " + layout + " iteration " + iteration;
+            // offsets in the layout are relative to the manufacturer id, which starts at index 2
+            Long expectedData = null;
+            try {
+                expectedData = Long.decode(legacyFormat(packet, dataStart + 2, dataEnd + 2, dataLittleEndian));
+            } catch (NumberFormatException e) {
+                // expected to be rethrown by the parser
+            }
+            Beacon beacon;
+            try {
+                beacon = parser.fromScanData(packet, -60, null, 0);
+            } catch (NumberFormatException e) {
+                assertEquals(null, expectedData, message);
+                continue;
+            }
+            assertEquals(true, beacon != null, message);
+            assertEquals(expectedData, beacon.getDataFields().get(0), message);
+
+            int expectedPower = 0;
+            try {
+                expectedPower = Integer.parseInt(legacyFormat(packet, powerStart + 2, powerEnd + 2, false)) + powerCorrection;
+                if (expectedPower > 127) {
+                    expectedPower -= 256;
+                }
+            } catch (NumberFormatException e) {
+                // keep default value
+            }
+            assertEquals(expectedPower, beacon.getTxPower(), message);
+            assertEquals(0xbeac, beacon.getBeaconTypeCode(), message);
+            assertEquals(Integer.parseInt(legacyFormat(packet, 2, 3, true)), beacon.getManufacturer(), message);
+        }
+    }
+
+    @Test
+    public void testByteUtilsMatchesBigInteger() {
+        Random random = new Random(42L);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            int length = 1 + random.nextInt(8);
+            byte[] bytes = new byte[length + 4];
+            random.nextBytes(bytes);
+            int start = random.nextInt(4);
+            int end = start + length - 1;
+            boolean littleEndian = random.nextBoolean();
+
+            byte[] bigEndian = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bigEndian[i] = bytes[littleEndian ? end - i : start + i];
+            }
+            assertEquals(new BigInteger(1, bigEndian).longValue(),
+                    ByteUtils.readUnsigned(bytes, start, end, littleEndian));
+            assertEquals(new BigInteger(bigEndian).longValue(),
+                    ByteUtils.readSigned(bytes, start, end, littleEndian));
+        }
+    }
+
+    /**
+     * The string formatting BeaconParser used to decode fields with before it read them directly.
+     */
+    private static String legacyFormat(byte[] byteBuffer, int startIndex, int endIndex, boolean littleEndian) {
+        byte[] bytes = new byte[endIndex - startIndex + 1];
+        if (littleEndian) {
+            for (int i = 0; i <= endIndex - startIndex; i++) {
+                bytes[i] = byteBuffer[startIndex + bytes.length - 1 - i];
+            }
+        } else {
+            for (int i = 0; i <= endIndex - startIndex; i++) {
+                bytes[i] = byteBuffer[startIndex + i];
+            }
+        }
+
+        int length = endIndex - startIndex + 1;
+        if (length < 5) {
+            long number = 0L;
+            for (int i = 0; i < bytes.length; i++) {
+                long byteValue = (long) (bytes[bytes.length - i - 1] & 0xff);
+                long positionValue = (long) Math.pow(256.0, i * 1.0);
+                number += (long) (byteValue * positionValue);
+            }
+            return Long.toString(number);
+        }
+
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            hexString.append(String.format("%02x", b));
+        }
+        if (length == 16) {
+            List<String> parts = new ArrayList<>();
+            parts.add(hexString.substring(0, 8));
+            parts.add(hexString.substring(8, 12));
+            parts.add(hexString.substring(12, 16));
+            parts.add(hexString.substring(16, 20));
+            parts.add(hexString.substring(20, 32));
+            return String.join("-", parts);
+        }
+        return "0x" + hexString;
+    }
+}
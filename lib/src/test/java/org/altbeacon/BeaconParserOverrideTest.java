@@ -0,0 +1,131 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.streamwide.smartms.altbeacon.beacon.AltBeacon;
+import com.streamwide.smartms.altbeacon.beacon.AltBeaconParser;
+import com.streamwide.smartms.altbeacon.beacon.Beacon;
+import com.streamwide.smartms.altbeacon.beacon.BeaconParser;
+import com.streamwide.smartms.altbeacon.bluetooth.BleAdvertisement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Checks that parsers overriding either <code>fromScanData</code> method are still called when
+ * the scanner parses an indexed advertisement.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BeaconParserOverrideTest {
+
+    private static class CustomBeacon extends Beacon {
+    }
+
+    private static class ScanDataOnlyParser extends BeaconParser {
+        int calls = 0;
+
+        ScanDataOnlyParser() {
+            setBeaconLayout(ALTBEACON_LAYOUT);
+        }
+
+        @Override
+        @Nullable
+        public Beacon fromScanData(@Nullable byte[] scanData, int rssi, @Nullable BluetoothDevice device, long timestampMs) {
+            calls++;
+            return fromScanData(scanData, rssi, device, timestampMs, new CustomBeacon());
+        }
+    }
+
+    private static class ProtectedScanDataParser extends BeaconParser {
+        int calls = 0;
+
+        ProtectedScanDataParser() {
+            setBeaconLayout(ALTBEACON_LAYOUT);
+        }
+
+        @Override
+        @Nullable
+        protected Beacon fromScanData(@Nullable byte[] bytesToProcess, int rssi, @Nullable BluetoothDevice device, long timestampMs, @NonNull Beacon beacon) {
+            calls++;
+            return super.fromScanData(bytesToProcess, rssi, device, timestampMs, new CustomBeacon());
+        }
+    }
+
+    private static class ScanDataOnlyAltBeaconParser extends AltBeaconParser {
+        int calls = 0;
+
+        @Override
+        public Beacon fromScanData(@Nullable byte[] scanData, int rssi, @Nullable BluetoothDevice device, long timestampMs) {
+            calls++;
+            return super.fromScanData(scanData, rssi, device, timestampMs);
+        }
+    }
+
+    @Test
+    public void testFromAdvertisementCallsOverriddenFromScanData() {
+        ScanDataOnlyParser parser = new ScanDataOnlyParser();
+        Beacon beacon = parser.fromAdvertisement(new BleAdvertisement(altBeaconPacket()), -55, null, 0L);
+        assertEquals(1, parser.calls, "fromScanData should be called once");
+        assertTrue(beacon instanceof CustomBeacon, "Expecting the beacon built by the subclass");
+        assertEquals("2f234454-cf6d-4a0f-adf2-f4911ba9ffa6", beacon.getId1().toString());
+    }
+
+    @Test
+    public void testFromAdvertisementCallsOverriddenProtectedFromScanData() {
+        ProtectedScanDataParser parser = new ProtectedScanDataParser();
+        Beacon beacon = parser.fromAdvertisement(new BleAdvertisement(altBeaconPacket()), -55, null, 0L);
+        assertEquals(1, parser.calls, "fromScanData should be called once");
+        assertTrue(beacon instanceof CustomBeacon, "Expecting the beacon built by the subclass");
+    }
+
+    @Test
+    public void testFromAdvertisementCallsFromScanDataOverriddenBelowAltBeaconParser() {
+        ScanDataOnlyAltBeaconParser parser = new ScanDataOnlyAltBeaconParser();
+        Beacon beacon = parser.fromAdvertisement(new BleAdvertisement(altBeaconPacket()), -55, null, 0L);
+        assertEquals(1, parser.calls, "fromScanData should be called once");
+        assertTrue(beacon instanceof AltBeacon, "Expecting an AltBeacon");
+    }
+
+    @Test
+    public void testAltBeaconParserKeepsIndexedPath() {
+        AltBeaconParser parser = new AltBeaconParser();
+        Beacon beacon = parser.fromAdvertisement(new BleAdvertisement(altBeaconPacket()), -55, null, 0L);
+        assertTrue(beacon instanceof AltBeacon, "Expecting an AltBeacon");
+        assertEquals(-59, beacon.getTxPower());
+    }
+
+    private static byte[] altBeaconPacket() {
+        return hexStringToByteArray("02011a1bff1801beac2f234454cf6d4a0fadf2f4911ba9ffa600010002c509");
+    }
+
+    private static byte[] hexStringToByteArray(String s) {
+        byte[] data = new byte[s.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+}
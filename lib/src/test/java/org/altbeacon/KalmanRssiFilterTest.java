@@ -0,0 +1,115 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import android.os.SystemClock;
+
+import com.streamwide.smartms.altbeacon.beacon.service.KalmanRssiFilter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+
+/**
+ * Checks that the Kalman filter converges on the rssi measured, that its measurements expire
+ * after the sample expiration time, and that it rejects invalid parameters.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class KalmanRssiFilterTest {
+
+    @Test
+    public void testConvergesOnConstantRssi() {
+        KalmanRssiFilter filter = new KalmanRssiFilter();
+        filter.addMeasurement(-40);
+        for (int i = 0; i < 200; i++) {
+            filter.addMeasurement(-70);
+        }
+        assertEquals(-70.0, filter.calculateRssi(), 0.01);
+        assertEquals(201, filter.getMeasurementCount());
+    }
+
+    @Test
+    public void testConvergesOnNoisyConstantRssi() {
+        KalmanRssiFilter filter = new KalmanRssiFilter();
+        for (int i = 0; i < 200; i++) {
+            filter.addMeasurement(i % 2 == 0 ? -66 : -74);
+        }
+        assertEquals(-70.0, filter.calculateRssi(), 1.0);
+    }
+
+    @Test
+    public void testMeasurementsExpire() {
+        KalmanRssiFilter filter = new KalmanRssiFilter(KalmanRssiFilter.DEFAULT_PROCESS_NOISE,
+                KalmanRssiFilter.DEFAULT_MEASUREMENT_NOISE, 1000);
+        assertEquals(true, filter.noMeasurementsAvailable());
+        assertEquals(0, filter.getMeasurementCount());
+
+        for (int i = 0; i < 3; i++) {
+            filter.addMeasurement(-60);
+        }
+        assertEquals(false, filter.noMeasurementsAvailable());
+        assertEquals(3, filter.getMeasurementCount());
+
+        // Expiration runs from the latest measurement
+        ShadowSystemClock.advanceBy(Duration.ofMillis(600));
+        filter.addMeasurement(-60);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(999));
+        assertEquals(false, filter.noMeasurementsAvailable());
+        assertEquals(4, filter.getMeasurementCount());
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1));
+        assertEquals(true, filter.noMeasurementsAvailable());
+        assertEquals(0, filter.getMeasurementCount());
+
+        // The next measurement starts a new estimate
+        filter.addMeasurement(-90);
+        assertEquals(1, filter.getMeasurementCount());
+        assertEquals(-90.0, filter.calculateRssi());
+    }
+
+    @Test
+    public void testMeasurementsExpireFromTheirReceiveTime() {
+        KalmanRssiFilter filter = new KalmanRssiFilter(KalmanRssiFilter.DEFAULT_PROCESS_NOISE,
+                KalmanRssiFilter.DEFAULT_MEASUREMENT_NOISE, 1000);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(5000));
+        filter.addMeasurement(-60, SystemClock.elapsedRealtime() - 1000);
+        assertEquals(true, filter.noMeasurementsAvailable());
+
+        filter.addMeasurement(-60, SystemClock.elapsedRealtime() - 999);
+        assertEquals(false, filter.noMeasurementsAvailable());
+    }
+
+    @Test
+    public void testRejectsInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter(-0.1, 4.0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter(0.125, 0.0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter(0.125, -4.0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter(0.125, 4.0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter.Factory(-0.1, 4.0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter.Factory(0.125, 0.0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new KalmanRssiFilter.Factory(0.125, 4.0, -1));
+
+        // A filter without process noise is valid
+        new KalmanRssiFilter(0.0, 4.0, 1000);
+    }
+}
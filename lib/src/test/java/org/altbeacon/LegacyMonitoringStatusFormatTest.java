@@ -0,0 +1,87 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamwide.smartms.altbeacon.beacon.Identifier;
+import com.streamwide.smartms.altbeacon.beacon.Region;
+import com.streamwide.smartms.altbeacon.beacon.service.RegionMonitoringState;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Checks that the monitored region states persisted by earlier versions, a serialized
+ * <code>HashMap&lt;Region, RegionMonitoringState&gt;</code>, can still be read.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LegacyMonitoringStatusFormatTest {
+
+    // Written by the original classes: region "inside" (id1, id2 = 1) inside, region "outside"
+    // (bluetooth address only) outside
+    private static final String LEGACY_STATUS_MAP =
+            "rO0ABXNyABFqYXZhLnV0aWwuSGFzaE1hcAUH2sHDFmDRAwACRgAKbG9hZEZhY3RvckkACXRocmVzaG9sZHhwP0AA"
+            + "AAAAAAx3CAAAABAAAAACc3IALmNvbS5zdHJlYW13aWRlLnNtYXJ0bXMuYWx0YmVhY29uLmJlYWNvbi5SZWdpb269"
+            + "0ZD3gMUkHAIAA0wAEW1CbHVldG9vdGhBZGRyZXNzdAASTGphdmEvbGFuZy9TdHJpbmc7TAAMbUlkZW50aWZpZXJz"
+            + "dAAQTGphdmEvdXRpbC9MaXN0O0wACW1VbmlxdWVJZHEAfgADeHB0ABEwMDoxMToyMjozMzo0NDo1NXNyABNqYXZh"
+            + "LnV0aWwuQXJyYXlMaXN0eIHSHZnHYZ0DAAFJAARzaXpleHAAAAAAdwQAAAAAeHQAB291dHNpZGVzcgBFY29tLnN0"
+            + "cmVhbXdpZGUuc21hcnRtcy5hbHRiZWFjb24uYmVhY29uLnNlcnZpY2UuUmVnaW9uTW9uaXRvcmluZ1N0YXRlgUGZ"
+            + "slevdL0CAANaAAZpbnNpZGVKAAxsYXN0U2VlblRpbWVMAAhjYWxsYmFja3QAOkxjb20vc3RyZWFtd2lkZS9zbWFy"
+            + "dG1zL2FsdGJlYWNvbi9iZWFjb24vc2VydmljZS9DYWxsYmFjazt4cAAAAAAAAAAAAHNyADhjb20uc3RyZWFtd2lk"
+            + "ZS5zbWFydG1zLmFsdGJlYWNvbi5iZWFjb24uc2VydmljZS5DYWxsYmFjawh3acv1SwQvAgAAeHBzcQB+AAJwc3EA"
+            + "fgAHAAAAA3cEAAAAA3NyADJjb20uc3RyZWFtd2lkZS5zbWFydG1zLmFsdGJlYWNvbi5iZWFjb24uSWRlbnRpZmll"
+            + "ckvLt7PhrrZkAgABWwAGbVZhbHVldAACW0J4cHVyAAJbQqzzF/gGCFTgAgAAeHAAAAAQLyNEVM9tSg+t8vSRG6n/"
+            + "pnNxAH4AEXVxAH4AFAAAAAIAAXB4dAAGaW5zaWRlc3EAfgAKAQAAAAAAVLjQc3EAfgANeA==";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadsLegacyStatusMap() throws IOException, ClassNotFoundException {
+        Map<Region, RegionMonitoringState> states;
+        try (ObjectInputStream input = new ObjectInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(LEGACY_STATUS_MAP)))) {
+            states = (Map<Region, RegionMonitoringState>) input.readObject();
+        }
+        assertEquals(2, states.size());
+
+        Region inside = new Region("inside", Identifier.parse("2f234454-cf6d-4a0f-adf2-f4911ba9ffa6"),
+                Identifier.parse("1"), null);
+        RegionMonitoringState insideState = states.get(inside);
+        assertNotNull(insideState);
+        assertTrue(insideState.getInside());
+        for (Region region : states.keySet()) {
+            if (region.equals(inside)) {
+                assertTrue(region.hasSameIdentifiers(inside), "Expecting the persisted identifiers");
+            }
+        }
+
+        RegionMonitoringState outsideState = states.get(new Region("outside", "00:11:22:33:44:55"));
+        assertNotNull(outsideState);
+        assertFalse(outsideState.getInside());
+        assertNotNull(outsideState.getCallback());
+    }
+}
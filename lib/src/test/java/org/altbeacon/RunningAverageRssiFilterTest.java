@@ -0,0 +1,109 @@
+/*
+ *
+ * 	StreamWIDE (Team on The Run)
+ *
+ * @createdBy  AndroidTeam on Sun, 18 Oct 2026 11:12:40 +0100
+ * @copyright  Copyright (c) 2026 StreamWIDE UK Ltd (Team on the Run)
+ * @email      support@teamontherun.com
+ *
+ * 	© Copyright 2026 StreamWIDE UK Ltd (Team on the Run). StreamWIDE is the copyright holder
+ * 	of all code contained in this file. Do not redistribute or
+ *  	re-use without permission.
+ *
+ * @lastModifiedOn Sun, 18 Oct 2026 11:12:40 +0100
+ */
+
+
+package org.altbeacon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.streamwide.smartms.altbeacon.beacon.service.RunningAverageRssiFilter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the running average read from the histogram matches the clipped average computed
+ * by sorting the measurements, as the filter used to.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RunningAverageRssiFilterTest {
+
+    @Test
+    public void testMatchesSortedClippedAverage() {
+        Random random = new Random(42);
+        for (int size = 0; size <= 250; size++) {
+            RunningAverageRssiFilter filter = new RunningAverageRssiFilter(60000);
+            List<Integer> measurements = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int rssi = -100 + random.nextInt(71);
+                filter.addMeasurement(rssi);
+                measurements.add(rssi);
+            }
+            assertEquals(size, filter.getMeasurementCount());
+            assertEquals(sortedClippedAverage(measurements), filter.calculateRssi(), "size " + size);
+        }
+    }
+
+    @Test
+    public void testAveragesValuesOutsideOfHistogram() {
+        RunningAverageRssiFilter filter = new RunningAverageRssiFilter(60000);
+        List<Integer> measurements = new ArrayList<>();
+        int[] values = {-300, -60, -61, 200, -59, -62, -58, -1000, -57, 150, -63, -56};
+        for (int rssi : values) {
+            filter.addMeasurement(rssi);
+            measurements.add(rssi);
+        }
+        assertEquals(sortedClippedAverage(measurements), filter.calculateRssi());
+    }
+
+    @Test
+    public void testExpiredMeasurementsAreNotAveraged() {
+        RunningAverageRssiFilter filter = new RunningAverageRssiFilter(1000);
+        List<Integer> recent = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            filter.addMeasurement(-90 + i % 5);
+        }
+        ShadowSystemClock.advanceBy(Duration.ofMillis(600));
+        for (int i = 0; i < 30; i++) {
+            filter.addMeasurement(-50 - i % 7);
+            recent.add(-50 - i % 7);
+        }
+        ShadowSystemClock.advanceBy(Duration.ofMillis(500));
+        assertEquals(sortedClippedAverage(recent), filter.calculateRssi());
+        assertEquals(recent.size(), filter.getMeasurementCount());
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1000));
+        assertEquals(Double.NaN, filter.calculateRssi());
+        assertEquals(true, filter.noMeasurementsAvailable());
+    }
+
+    /**
+     * The clipped average as computed before measurements were counted in a histogram
+     */
+    private static double sortedClippedAverage(List<Integer> measurements) {
+        List<Integer> sorted = new ArrayList<>(measurements);
+        Collections.sort(sorted);
+        int size = sorted.size();
+        int startIndex = 0;
+        int endIndex = size - 1;
+        if (size > 2) {
+            startIndex = size / 10 + 1;
+            endIndex = size - size / 10 - 2;
+        }
+        double sum = 0;
+        for (int i = startIndex; i <= endIndex; i++) {
+            sum += sorted.get(i);
+        }
+        return sum / (endIndex - startIndex + 1);
+    }
+}